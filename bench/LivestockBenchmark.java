@@ -0,0 +1,278 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+// Benchmarks for the LivestockManagement hot paths: loading and parsing, saving, RFID lookup,
+// search, summary generation, herd scans (Animal objects against HerdColumns), herd statistics
+// (one worker against the common fork-join pool), the B-tree record store, the animal cache over
+// it and user authentication, over generated herds of several sizes.
+//
+//   mvn -P benchmark verify
+//   java -cp target/classes:target/bench-classes LivestockBenchmark
+//
+// Each benchmark runs timed warmup iterations, then timed measurement iterations, and reports
+// throughput and the bytes allocated per operation on the benchmark thread. Options:
+//   -Dbench.sizes=1000,10000,100000,1000000  herd sizes
+//   -Dbench.filter=<regex>                   only run benchmarks whose name matches
+//   -Dbench.warmup=3 -Dbench.iterations=5    iteration counts
+//   -Dbench.time=1000                        milliseconds per iteration
+// Every iteration runs at least one operation, so the slow ones at 1M still finish.
+public class LivestockBenchmark {
+    private static final int[] SIZES = parseSizes(System.getProperty("bench.sizes", "1000,10000,100000,1000000"));
+    private static final Pattern FILTER = Pattern.compile(System.getProperty("bench.filter", ".*"));
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("bench.warmup", 3);
+    private static final int MEASURE_ITERATIONS = Integer.getInteger("bench.iterations", 5);
+    private static final long ITERATION_NANOS = Long.getLong("bench.time", 1000) * 1_000_000L;
+
+    private static final String[] BREEDS = {"Holstein", "Angus", "Jersey", "Hereford", "Merino", "Duroc", "Boer", "Suffolk"};
+    private static final String[] HEALTH = {"Healthy", "Healthy", "Healthy", "Sick", "Injured", "Recovering", "Under Observation"};
+    private static final String[] FEEDING = {"No feeding data", "Hay 5kg", "Grain 2kg, hay 4kg", "Pasture", "Silage 8kg"};
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile int sink; // Keeps results alive so the JIT can't drop the work
+
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        System.out.printf("%-20s %9s %14s %10s %14s %12s%n", "Benchmark", "Herd", "ops/s", "error", "alloc B/op", "alloc MB/s");
+
+        for (int size : SIZES) {
+            Path dir = Files.createTempDirectory("farm-bench");
+            try {
+                runHerdBenchmarks(size, dir.toFile());
+            } finally {
+                deleteRecursively(dir.toFile());
+            }
+        }
+
+        Path dir = Files.createTempDirectory("farm-bench");
+        try {
+            UserManagement users = new UserManagement(dir.toFile());
+            bench("auth.login", 0, () -> users.authenticate("admin", "admin"));
+            bench("auth.rejected", 0, () -> users.authenticate("admin", "wrong"));
+        } finally {
+            deleteRecursively(dir.toFile());
+        }
+    }
+
+    private static void runHerdBenchmarks(int size, File dir) throws Exception {
+        List<Animal> herd = generateHerd(size, 42);
+        File snapshot = new File(dir, "FarmRecords_v2.fsnap");
+        File text = new File(dir, "herd.fdf");
+        AnimalSnapshot.write(herd, snapshot);
+        AnimalSnapshot.writeText(herd, text);
+
+        bench("load.snapshot", size, () -> {
+            Map<String, Animal> animals = new HashMap<>(size * 2);
+            AnimalSnapshot.read(snapshot, animals);
+            return animals.size();
+        });
+        bench("load.parse", size, () -> {
+            Map<String, Animal> animals = new HashMap<>(size * 2);
+            AnimalSnapshot.readText(text, animals, new AnimalRecordFormat.Report(text.getName()));
+            return animals.size();
+        });
+        File output = new File(dir, "out");
+        bench("save.snapshot", size, () -> {
+            AnimalSnapshot.write(herd, output);
+            return output.length();
+        });
+        bench("save.text", size, () -> {
+            AnimalSnapshot.writeText(herd, output);
+            return output.length();
+        });
+
+        // The B-tree store: reading it whole, then single animals by ID and RFID tag through the page cache
+        File storeDir = new File(dir, "store");
+        Files.createDirectories(storeDir.toPath());
+        Files.copy(snapshot.toPath(), new File(storeDir, snapshot.getName()).toPath());
+        BTreeAnimalRepository store = new BTreeAnimalRepository(storeDir, System.err::println);
+        try {
+            store.load(animal -> { }, new ArrayList<>()); // Imports the snapshot
+            bench("store.load", size, () -> {
+                Map<String, Animal> animals = new HashMap<>(size * 2);
+                BTreeAnimalRepository reader = new BTreeAnimalRepository(storeDir, System.err::println);
+                reader.load(animal -> animals.put(animal.getId(), animal), new ArrayList<>());
+                reader.close();
+                return animals.size();
+            });
+            Random random = new Random(11);
+            String[] ids = new String[1024];
+            String[] tags = new String[1024];
+            for (int i = 0; i < ids.length; i++) {
+                Animal animal = herd.get(random.nextInt(size));
+                ids[i] = animal.getId();
+                tags[i] = animal.getRFIDTag();
+            }
+            int[] next = new int[1];
+            bench("store.get.id", size, () -> store.findById(ids[next[0]++ & 1023]));
+            bench("store.get.rfid", size, () -> store.findByRfid(tags[next[0]++ & 1023]));
+
+            // An AnimalCache over the store with room for 2% of the herd, read with 90% of lookups
+            // going to a hot 1% of the animals
+            AnimalCache cache = new AnimalCache(size / 50 * AnimalCache.estimateBytes(herd.get(0)), store::findById);
+            String[] hot = new String[Math.max(1, size / 100)];
+            for (int i = 0; i < hot.length; i++) hot[i] = herd.get(random.nextInt(size)).getId();
+            String[] skewed = new String[65536];
+            for (int i = 0; i < skewed.length; i++) {
+                skewed[i] = random.nextInt(10) < 9 ? hot[random.nextInt(hot.length)] : herd.get(random.nextInt(size)).getId();
+            }
+            bench("cache.get.skewed", size, () -> cache.get(skewed[next[0]++ & 65535]));
+            System.out.println("    " + cache.getStats());
+        } finally {
+            store.close();
+        }
+
+        LivestockManagement system = new LivestockManagement(dir);
+        try {
+            Random random = new Random(7);
+            String[] tags = new String[1024];
+            String[] idFragments = new String[1024];
+            for (int i = 0; i < tags.length; i++) {
+                Animal animal = herd.get(random.nextInt(size));
+                tags[i] = animal.getRFIDTag();
+                idFragments[i] = animal.getId().substring(2);
+            }
+            int[] next = new int[1];
+
+            bench("rfid.scan", size, () -> system.scanRFIDTag(tags[next[0]++ & 1023]));
+            bench("rfid.lookup", size, () -> system.getAnimalByRFIDTag(tags[next[0]++ & 1023]));
+            bench("search.id", size, () -> system.searchAnimalIds(idFragments[next[0]++ & 1023]));
+            bench("search.fields", size, () -> system.searchAnimalIds("breed:angus health:sick"));
+            bench("search.text", size, () -> system.searchAnimalIds("observation"));
+            bench("summary.headline", size, system::generateSummaryHeadline);
+
+            // The same aggregations over Animal objects as the herd map holds them, then over the columns
+            List<Animal> objects = system.getAllAnimals();
+            HerdColumns columns = system.getHerdColumns();
+            LocalDate since = LocalDate.of(2025, 1, 1);
+            bench("scan.breed.obj", size, () -> averageWeightByBreed(objects));
+            bench("scan.breed.col", size, columns::averageWeightByBreed);
+            bench("scan.ages.obj", size, () -> ageDistribution(objects));
+            bench("scan.ages.col", size, columns::ageDistribution);
+            bench("scan.updated.obj", size, () -> countUpdatedSince(objects, since));
+            bench("scan.updated.col", size, () -> columns.countUpdatedSince(since));
+            ForkJoinPool single = new ForkJoinPool(1);
+            try {
+                bench("stats.serial", size, () -> columns.statistics(since, single));
+            } finally {
+                single.shutdown();
+            }
+            bench("stats.parallel", size, () -> system.getHerdStatistics(since));
+            bench("summary.full", size, () -> {
+                StringWriter out = new StringWriter();
+                system.writeFarmActivitySummary(out);
+                return out.getBuffer().length();
+            });
+        } finally {
+            system.close();
+        }
+    }
+
+    private static Map<String, Double> averageWeightByBreed(List<Animal> animals) {
+        Map<String, double[]> sums = new HashMap<>();
+        for (Animal animal : animals) {
+            double[] sum = sums.computeIfAbsent(animal.getBreed(), breed -> new double[2]);
+            sum[0] += animal.getWeight();
+            sum[1]++;
+        }
+        Map<String, Double> averages = new TreeMap<>();
+        sums.forEach((breed, sum) -> averages.put(breed, sum[0] / sum[1]));
+        return averages;
+    }
+
+    private static Map<Integer, Long> ageDistribution(List<Animal> animals) {
+        Map<Integer, Long> byAge = new TreeMap<>();
+        for (Animal animal : animals) {
+            byAge.merge(animal.getAge(), 1L, Long::sum);
+        }
+        return byAge;
+    }
+
+    private static int countUpdatedSince(List<Animal> animals, LocalDate date) {
+        int count = 0;
+        for (Animal animal : animals) {
+            if (!animal.getLastUpdated().isBefore(date)) count++;
+        }
+        return count;
+    }
+
+    private static void bench(String name, int size, Operation operation) throws Exception {
+        if (!FILTER.matcher(name).find()) return;
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(operation);
+        }
+        double[] rates = new double[MEASURE_ITERATIONS];
+        long operations = 0;
+        long allocated = 0;
+        long elapsed = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long[] result = iteration(operation);
+            rates[i] = result[0] / (result[1] / 1e9);
+            operations += result[0];
+            elapsed += result[1];
+            allocated += result[2];
+        }
+
+        double mean = Arrays.stream(rates).average().orElse(0);
+        double variance = Arrays.stream(rates).map(rate -> (rate - mean) * (rate - mean)).sum()
+                / Math.max(1, rates.length - 1);
+        System.out.printf("%-20s %9s %14.1f %10.1f %14.0f %12.1f%n", name, size == 0 ? "-" : String.valueOf(size),
+                mean, Math.sqrt(variance), (double) allocated / operations, allocated / (elapsed / 1e9) / (1 << 20));
+    }
+
+    // Runs the operation for one iteration's time and returns {operations, nanos, bytes allocated}
+    private static long[] iteration(Operation operation) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long operations = 0;
+        long now;
+        do {
+            Object result = operation.run();
+            sink += result == null ? 0 : result.hashCode();
+            operations++;
+            now = System.nanoTime();
+        } while (now - start < ITERATION_NANOS);
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        return new long[]{operations, now - start, allocated};
+    }
+
+    // Deterministic synthetic herd with unique IDs and RFID tags and realistic value spreads
+    static List<Animal> generateHerd(int size, long seed) {
+        Random random = new Random(seed);
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        List<Animal> herd = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // An odd multiplier permutes the 32-bit range, so tags stay unique without looking sequential
+            String rfid = String.format("RF%08X", i * 0x9E3779B1);
+            herd.add(new Animal(String.format("A-%07d", i), BREEDS[random.nextInt(BREEDS.length)],
+                    random.nextInt(15), 20 + random.nextInt(8800) / 10.0, rfid,
+                    HEALTH[random.nextInt(HEALTH.length)], FEEDING[random.nextInt(FEEDING.length)],
+                    start.plusDays(random.nextInt(600))));
+        }
+        return herd;
+    }
+
+    private static int[] parseSizes(String sizes) {
+        return Arrays.stream(sizes.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Throughput of many concurrent clients served one virtual thread each, against the same
+// clients sharing a fixed pool of platform threads. Part of the Java 21 build.
+//
+//   java ConcurrentClientBenchmark [--clients 10000] [--pool 200] [--seconds 10] [--io-millis 10] [--herd 50000]
+//
+// Every request first blocks for --io-millis, standing in for the round trip to a barn terminal
+// or reader, then runs a scan (80%), search (10%), health update (5%) or feeding log (5%).
+// Latency runs from the moment a client is ready to send until it has its answer, so time
+// spent queued for a pool thread counts.
+public class ConcurrentClientBenchmark {
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int clients = Integer.parseInt(options.getOrDefault("clients", "10000"));
+        int poolSize = Integer.parseInt(options.getOrDefault("pool", "200"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "10"));
+        long ioMillis = Long.parseLong(options.getOrDefault("io-millis", "10"));
+        int herdSize = Integer.parseInt(options.getOrDefault("herd", "50000"));
+
+        File directory = Files.createTempDirectory("client-bench").toFile();
+        LivestockManagement system = new LivestockManagement(directory);
+        try {
+            List<Animal> herd = new ArrayList<>(herdSize);
+            for (int i = 0; i < herdSize; i++) {
+                herd.add(new Animal(String.format("C-%07d", i), "Benchmark", 2, 400, String.format("CB%08X", i)));
+            }
+            system.registerAnimals(herd);
+
+            System.out.printf("%d clients, %d ms simulated I/O per request, %d s per run%n", clients, ioMillis, seconds);
+            System.out.printf("%-28s %12s %10s %10s %10s%n", "Executor", "requests/s", "p50 ms", "p99 ms", "max ms");
+            runVirtual(system, herd, clients, seconds, ioMillis);
+            runPool(system, herd, clients, poolSize, seconds, ioMillis);
+        } finally {
+            system.close();
+            deleteRecursively(directory);
+        }
+    }
+
+    // One virtual thread per client, each looping request after request
+    private static void runVirtual(LivestockManagement system, List<Animal> herd, int clients,
+                                   int seconds, long ioMillis) throws Exception {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder completed = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        try (FarmRequestExecutor executor = new FarmRequestExecutor(system)) {
+            List<Future<?>> connections = new ArrayList<>(clients);
+            for (int i = 0; i < clients; i++) {
+                Workload workload = new Workload(herd, i);
+                connections.add(executor.connect("client-" + i, session -> {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        Thread.sleep(ioMillis);
+                        session.call(workload.next());
+                        latency.record(System.nanoTime() - start);
+                        completed.increment();
+                    }
+                }));
+            }
+            for (Future<?> connection : connections) {
+                connection.get();
+            }
+        }
+        report("virtual threads", completed.sum(), seconds, latency);
+    }
+
+    // The same clients as tasks on a fixed pool: each request is a task that requeues the next one
+    private static void runPool(LivestockManagement system, List<Animal> herd, int clients, int poolSize,
+                                int seconds, long ioMillis) throws Exception {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder completed = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        CountDownLatch finished = new CountDownLatch(clients);
+        FarmRequestExecutor requests = new FarmRequestExecutor(system);
+
+        for (int i = 0; i < clients; i++) {
+            Workload workload = new Workload(herd, i);
+            pool.execute(new Runnable() {
+                long readyAt = System.nanoTime();
+
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(ioMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    requests.execute(workload.next());
+                    long now = System.nanoTime();
+                    latency.record(now - readyAt);
+                    completed.increment();
+                    if (now < deadline) {
+                        readyAt = now;
+                        pool.execute(this);
+                    } else {
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+        finished.await();
+        pool.shutdown();
+        requests.close();
+        report("fixed pool (" + poolSize + " threads)", completed.sum(), seconds, latency);
+    }
+
+    // Request mix of one client, seeded so both runs replay the same sequence
+    private static class Workload {
+        private final List<Animal> herd;
+        private final Random random;
+
+        Workload(List<Animal> herd, long seed) {
+            this.herd = herd;
+            this.random = new Random(seed);
+        }
+
+        FarmRequestExecutor.Request next() {
+            Animal animal = herd.get(random.nextInt(herd.size()));
+            int kind = random.nextInt(100);
+            if (kind < 80) return new FarmRequestExecutor.Scan(animal.getRFIDTag());
+            if (kind < 90) return new FarmRequestExecutor.Search(animal.getId().substring(4));
+            if (kind < 95) return new FarmRequestExecutor.UpdateHealth(animal.getId(), random.nextBoolean() ? "Healthy" : "Sick");
+            return new FarmRequestExecutor.LogFeeding(animal.getId(), "Hay " + random.nextInt(10) + "kg");
+        }
+    }
+
+    private static void report(String name, long completed, int seconds, LatencyHistogram latency) {
+        System.out.printf("%-28s %12.0f %10.1f %10.1f %10.1f%n", name, completed / (double) seconds,
+                latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6, latency.getMax() / 1e6);
+    }
+
+    // "--clients 500 --pool 50" -> {clients=500, pool=50}
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
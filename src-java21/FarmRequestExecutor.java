@@ -0,0 +1,132 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+// Runs scan, update and query requests against LivestockManagement on virtual threads, one per
+// connected client or reader, so thousands of barn terminals can block on their own I/O without
+// tying up a platform thread each. Part of the Java 21 build (mvn -P java21).
+//
+// Cancellation is structured: clients run inside the executor's scope and the requests a client
+// forks run inside that client's scope. Disconnecting a client cancels its unfinished requests,
+// closing the executor disconnects every client, and neither returns until the threads it owns
+// have finished. (StructuredTaskScope would express this directly but is still a preview API in 21.)
+class FarmRequestExecutor implements AutoCloseable {
+    sealed interface Request permits Scan, UpdateHealth, LogFeeding, Search {}
+
+    record Scan(String rfidTag) implements Request {}
+    record UpdateHealth(String id, String status) implements Request {}
+    record LogFeeding(String id, String data) implements Request {}
+    record Search(String query) implements Request {}
+
+    // Talks to one client for as long as it is connected, issuing its requests through the session
+    interface ClientHandler {
+        void serve(ClientSession session) throws Exception;
+    }
+
+    private final LivestockManagement system;
+    private final ExecutorService clients = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("farm-client-", 0).factory());
+    private final Set<ClientSession> sessions = ConcurrentHashMap.newKeySet();
+
+    public FarmRequestExecutor(LivestockManagement system) {
+        this.system = system;
+    }
+
+    // Starts serving a client on its own virtual thread; cancelling the future disconnects it
+    public Future<?> connect(String clientId, ClientHandler handler) {
+        return clients.submit(() -> {
+            try (ClientSession session = new ClientSession(clientId)) {
+                sessions.add(session);
+                try {
+                    handler.serve(session);
+                } finally {
+                    sessions.remove(session);
+                }
+            }
+            return null;
+        });
+    }
+
+    public int getConnectedCount() {
+        return sessions.size();
+    }
+
+    // Runs one request on the calling thread
+    public Object execute(Request request) {
+        return switch (request) {
+            case Scan scan -> system.scanRFIDTag(scan.rfidTag());
+            case UpdateHealth update -> system.updateHealthStatus(update.id(), update.status());
+            case LogFeeding feeding -> system.logFeedingData(feeding.id(), feeding.data());
+            case Search search -> system.searchAnimalIds(search.query());
+        };
+    }
+
+    // Disconnects every client, cancelling their requests, and waits for all of them to finish
+    @Override
+    public void close() {
+        clients.shutdownNow();
+        clients.close();
+    }
+
+    // One connected client. Requests it forks run on virtual threads of their own and are
+    // cancelled when the client disconnects or their deadline passes.
+    final class ClientSession implements AutoCloseable {
+        private final String clientId;
+        private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+
+        private ClientSession(String clientId) {
+            this.clientId = clientId;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        // Runs a request on the client's own thread
+        public Object call(Request request) {
+            return execute(request);
+        }
+
+        // Runs a request with a deadline, cancelling it if the deadline passes
+        public Object call(Request request, Duration timeout)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            Future<Object> result = requests.submit(() -> execute(request));
+            try {
+                return result.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } finally {
+                result.cancel(true);
+            }
+        }
+
+        // Runs requests concurrently and returns their results in order. If one fails, or the
+        // deadline passes first, the others are cancelled before this throws.
+        public List<Object> callAll(List<Request> batch, Duration timeout)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            List<Future<Object>> results = new ArrayList<>(batch.size());
+            try {
+                for (Request request : batch) {
+                    results.add(requests.submit(() -> execute(request)));
+                }
+                List<Object> values = new ArrayList<>(batch.size());
+                for (Future<Object> result : results) {
+                    values.add(result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+                }
+                return values;
+            } finally {
+                for (Future<Object> result : results) {
+                    result.cancel(true);
+                }
+            }
+        }
+
+        // Cancels the client's unfinished requests and waits for them to stop
+        @Override
+        public void close() {
+            requests.shutdownNow();
+            requests.close();
+        }
+    }
+}
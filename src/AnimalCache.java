@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// The animals LivestockManagement works on. Over the snapshot repository this is the whole herd in
+// a concurrent map, as before. Over the B-tree store it is a byte-budgeted LRU of the animals in
+// use (-Dfarm.cache.maxBytes, 64 MB by default), with the rest read from the store on a miss.
+//
+// There is at most one instance of each animal in memory that can be changed: callers pin an
+// animal before changing it and release it afterwards, and a pinned animal is held outside the
+// LRU, so every lookup in between returns that same instance rather than a fresh copy read from
+// the store. An animal with changes the writer hasn't saved yet is dirty and stays pinned until
+// the batch holding its last change is written, so a change can't be lost by evicting the animal
+// and reading the stored record back. Evicting therefore never writes anything; dirty animals
+// reach the store through the persistence writer like every other change. Pinned animals count
+// towards the budget but may exceed it until they are released and written.
+//
+// A miss is read from the store without holding the cache's lock, so other lookups don't wait
+// behind the disk. If another thread cached the animal meanwhile, its instance is the one kept;
+// a copy read while a batch was being written may predate it and is read again.
+class AnimalCache {
+    static final long DEFAULT_MAX_BYTES = Long.getLong("farm.cache.maxBytes", 64L * 1024 * 1024);
+
+    interface Loader {
+        Animal load(String id) throws IOException; // Null if there is no such animal
+    }
+
+    private final Map<String, Animal> herd; // Unbounded: every animal; null when bounded
+    private final long maxBytes;
+    private final Loader loader;
+    private final LinkedHashMap<String, Animal> recent = new LinkedHashMap<>(1024, 0.75f, true); // Clean, eldest first
+    private final Map<String, Pinned> pinned = new HashMap<>(); // Dirty, by ID
+    private long bytes;
+    private long batchesWritten; // Lets a read made without the lock tell whether a write overlapped it
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+
+    private static final class Pinned {
+        final Animal animal;
+        int users; // Callers between pin() and release()
+        int unwritten; // Change records not yet written
+
+        Pinned(Animal animal) {
+            this.animal = animal;
+        }
+    }
+
+    // Every animal, in the given map; lookups are lock-free and nothing is ever evicted
+    AnimalCache(Map<String, Animal> herd) {
+        this.herd = herd;
+        this.maxBytes = Long.MAX_VALUE;
+        this.loader = herd::get;
+    }
+
+    // At most about maxBytes of clean animals, the others read with the loader when needed
+    AnimalCache(long maxBytes, Loader loader) {
+        this.herd = null;
+        this.maxBytes = maxBytes;
+        this.loader = loader;
+    }
+
+    boolean isBounded() {
+        return herd == null;
+    }
+
+    // The animal with the ID, read from the store and cached on a miss. Null if there is none or
+    // its record couldn't be read (reported on stderr).
+    Animal get(String id) {
+        if (herd != null) return herd.get(id); // Not counted: nothing is ever missing from memory
+        return lookup(id, true);
+    }
+
+    // Like get, but a miss isn't cached: for walks over the whole herd that would otherwise flush
+    // the animals in use out of the cache
+    Animal peek(String id) {
+        if (herd != null) return herd.get(id);
+        return lookup(id, false);
+    }
+
+    // The animal with the ID, kept in memory and returned by every lookup until release(), or null
+    // if there is none. Pin an animal before changing it.
+    Animal pin(String id) {
+        if (herd != null) return herd.get(id);
+        while (true) {
+            long before;
+            synchronized (this) {
+                Pinned entry = pinned.get(id);
+                if (entry == null) {
+                    Animal animal = recent.remove(id);
+                    if (animal != null) {
+                        entry = new Pinned(animal);
+                        pinned.put(id, entry);
+                    }
+                }
+                if (entry != null) {
+                    hits.increment();
+                    entry.users++;
+                    return entry.animal;
+                }
+                misses.increment();
+                before = batchesWritten;
+            }
+            Animal animal = load(id);
+            if (animal == null) return null;
+            synchronized (this) {
+                if (cached(id) != null || batchesWritten != before) continue; // Take theirs, or read it again
+                Pinned entry = new Pinned(animal);
+                pinned.put(id, entry);
+                bytes += estimateBytes(animal);
+                entry.users++;
+                return animal;
+            }
+        }
+    }
+
+    // Ends a pin(); the animal stays pinned while it has unwritten changes
+    void release(Animal animal) {
+        if (herd != null) return;
+        synchronized (this) {
+            Pinned entry = pinned.get(animal.getId());
+            if (entry == null) return;
+            entry.users--;
+            unpinIfDone(entry);
+            evict();
+        }
+    }
+
+    // An animal read at startup, cached while there is room
+    synchronized void loaded(Animal animal) {
+        if (herd != null) {
+            herd.putIfAbsent(animal.getId(), animal);
+        } else if (bytes + estimateBytes(animal) <= maxBytes && cached(animal.getId()) == null) {
+            insert(animal);
+        }
+    }
+
+    // Counts change records just submitted to the writer against an animal, adding it if it is new.
+    // Called while holding the animal's lock, right after changing it; an existing animal must be
+    // pinned by the caller, so the instance changed is the one every lookup returns.
+    void changed(Animal animal, int records) {
+        if (herd != null) {
+            herd.putIfAbsent(animal.getId(), animal);
+            return;
+        }
+        synchronized (this) {
+            String id = animal.getId();
+            Pinned entry = pinned.get(id);
+            if (entry == null) {
+                if (recent.containsKey(id)) throw new IllegalStateException("Animal " + id + " changed without being pinned");
+                entry = new Pinned(animal); // Just registered
+                pinned.put(id, entry);
+                bytes += estimateBytes(animal);
+            } else if (entry.animal != animal) {
+                throw new IllegalStateException("A second copy of animal " + id + " was changed");
+            }
+            entry.unwritten += records;
+            evict();
+        }
+    }
+
+    // Counts the records of a batch the writer has saved, unpinning animals with nothing left to write
+    void written(List<String[]> records) {
+        if (herd != null) return;
+        synchronized (this) {
+            batchesWritten++;
+            for (String[] record : records) {
+                String id = AnimalJournal.animalId(record);
+                Pinned entry = id == null ? null : pinned.get(id);
+                if (entry == null || entry.unwritten == 0) continue;
+                entry.unwritten--;
+                unpinIfDone(entry);
+            }
+            evict();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    // Fraction of get() calls answered from memory, NaN before the first; hits and misses are
+    // only counted when bounded
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? Double.NaN : (double) hit / total;
+    }
+
+    public synchronized int getSize() {
+        return herd != null ? herd.size() : recent.size() + pinned.size();
+    }
+
+    public synchronized int getDirtyCount() {
+        return pinned.size();
+    }
+
+    // Estimated bytes held; only tracked when bounded
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public String getStats() {
+        if (herd != null) {
+            return String.format("animal cache: whole herd (%d animals)", getSize());
+        }
+        return String.format("animal cache: %d animals (%d dirty), %.1f of %.1f MB, hit rate %.1f%%, %d misses, %d evictions",
+                getSize(), getDirtyCount(), getBytes() / 1048576.0, maxBytes / 1048576.0,
+                getHitRate() * 100, getMissCount(), getEvictionCount());
+    }
+
+    // Rough retained size of a cached animal: the Animal and its State (~72 bytes), the ID and
+    // RFID strings (~40 bytes each plus their characters) and the map entry (~64 bytes). Breed and
+    // health strings are shared with other animals and not counted; nor is the feeding note, which
+    // can change while the animal is cached, and the estimate must not change between insert and eviction.
+    static long estimateBytes(Animal animal) {
+        return 216 + animal.getId().length() + animal.getRFIDTag().length();
+    }
+
+    private Animal cached(String id) {
+        Pinned entry = pinned.get(id);
+        return entry != null ? entry.animal : recent.get(id);
+    }
+
+    // A cached animal, or one read from the store without the lock and kept in the cache if asked to
+    private Animal lookup(String id, boolean keep) {
+        while (true) {
+            long before;
+            synchronized (this) {
+                Animal animal = cached(id);
+                if (animal != null) {
+                    if (keep) hits.increment();
+                    return animal;
+                }
+                if (keep) misses.increment();
+                before = batchesWritten;
+            }
+            Animal animal = load(id);
+            synchronized (this) {
+                if (cached(id) != null || batchesWritten != before) continue; // Take theirs, or read it again
+                if (animal != null && keep) insert(animal);
+                return animal;
+            }
+        }
+    }
+
+    private void unpinIfDone(Pinned entry) {
+        if (entry.users > 0 || entry.unwritten > 0) return;
+        pinned.remove(entry.animal.getId());
+        recent.put(entry.animal.getId(), entry.animal);
+    }
+
+    private Animal load(String id) {
+        try {
+            return loader.load(id);
+        } catch (IOException | IllegalArgumentException e) {
+            loadFailures.increment();
+            System.err.println("Error reading animal " + id + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void insert(Animal animal) {
+        recent.put(animal.getId(), animal);
+        bytes += estimateBytes(animal);
+        evict();
+    }
+
+    // Drops the least recently used clean animals until the budget is met
+    private void evict() {
+        Iterator<Animal> eldest = recent.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Animal animal = eldest.next();
+            eldest.remove();
+            bytes -= estimateBytes(animal);
+            evictions.increment();
+        }
+    }
+}
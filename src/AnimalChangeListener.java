@@ -0,0 +1,11 @@
+// Receives notifications about changes to the herd.
+// Callbacks run on the thread that made the change (or the persistence thread for failures),
+// so Swing listeners must hop onto the EDT themselves.
+interface AnimalChangeListener {
+    enum ChangeType { REGISTERED, HEALTH_UPDATED, FEEDING_LOGGED, WEIGHT_RECORDED }
+
+    void animalChanged(ChangeType type, Animal animal);
+
+    default void persistenceFailed(String message) {
+    }
+}
@@ -0,0 +1,321 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+// Append-only history of health, feeding and weight events, partitioned by day.
+// Each day is one segment file "<yyyy-mm-dd>.events" of records:
+//   int length of the rest, int (type << 17 | second of day), short ID length, animal ID,
+//   then the value: a weight as the bits of the double, anything else as its text
+// Text is UTF-8 and kept inline, so nothing about past events is held in memory; a feeding
+// note costs its own record and no more.
+//
+// When a segment is closed (the day rolls over, or on close) an index "<yyyy-mm-dd>.idx" is
+// written beside it: the segment length it covers, then (hash of the animal ID << 32 | record
+// offset) for each record, sorted, so a per-animal query reads only the records whose ID has the
+// same hash. Records added to a day after its index was written are scanned.
+class AnimalHistory implements Closeable {
+    enum EventType { HEALTH, FEEDING, WEIGHT }
+
+    // One recorded change to an animal
+    static final class Event {
+        final EventType type;
+        final String animalId;
+        final String value;
+        final LocalDateTime time;
+
+        Event(EventType type, String animalId, String value, LocalDateTime time) {
+            this.type = type;
+            this.animalId = animalId;
+            this.value = value;
+            this.time = time;
+        }
+
+        // Weight in kg of a WEIGHT event
+        double weight() {
+            return Double.parseDouble(value);
+        }
+
+        @Override
+        public String toString() {
+            return time + " " + animalId + " " + type + ": " + value;
+        }
+    }
+
+    private static final int TYPE_SHIFT = 17; // Seconds of the day fit in the low 17 bits
+    private static final int RECORD_HEADER = 10; // Length, type and time, ID length
+
+    private final File directory;
+
+    // Segment currently being appended to; events mostly arrive for today
+    private LocalDate openDay;
+    private FileChannel openSegment;
+
+    // The mapped whole records of one segment file, by offset
+    private static final class Segment {
+        final MappedByteBuffer records;
+        final int end; // After the last whole record
+
+        Segment(MappedByteBuffer records) {
+            this.records = records;
+            this.end = wholeLength(records);
+        }
+
+        int next(int offset) {
+            return offset + 4 + records.getInt(offset);
+        }
+
+        int typeAndTime(int offset) {
+            return records.getInt(offset + 4);
+        }
+
+        String animalId(int offset) {
+            return text(offset + RECORD_HEADER, idLength(offset));
+        }
+
+        boolean isAnimal(int offset, byte[] id) {
+            if (idLength(offset) != id.length) return false;
+            for (int i = 0; i < id.length; i++) {
+                if (records.get(offset + RECORD_HEADER + i) != id[i]) return false;
+            }
+            return true;
+        }
+
+        String value(int offset) {
+            int start = offset + RECORD_HEADER + idLength(offset);
+            if (typeAndTime(offset) >>> TYPE_SHIFT == EventType.WEIGHT.ordinal()) {
+                return Double.toString(Double.longBitsToDouble(records.getLong(start)));
+            }
+            return text(start, next(offset) - start);
+        }
+
+        private int idLength(int offset) {
+            return records.getShort(offset + 8) & 0xFFFF;
+        }
+
+        private String text(int start, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = records.duplicate();
+            view.position(start);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    public AnimalHistory(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create history directory " + directory);
+        }
+    }
+
+    // Appends events in order; segments are forced to disk when the day rolls over and on close
+    public synchronized void append(List<Event> events) throws IOException {
+        if (events.isEmpty()) return;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(events.size() * 32);
+        LocalDate day = events.get(0).time.toLocalDate();
+        for (Event event : events) {
+            LocalDate eventDay = event.time.toLocalDate();
+            if (!eventDay.equals(day)) {
+                writeRecords(day, buffer);
+                day = eventDay;
+            }
+            buffer.write(record(event));
+        }
+        writeRecords(day, buffer);
+    }
+
+    // Events of one animal between two dates (inclusive), oldest first; a null type means every kind
+    public List<Event> eventsFor(String animalId, EventType type, LocalDate from, LocalDate to) throws IOException {
+        List<Event> events = new ArrayList<>();
+        byte[] id = animalId.getBytes(StandardCharsets.UTF_8);
+        int hash = animalId.hashCode();
+
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            Segment segment = mapSegment(segmentFile(day));
+            if (segment == null) continue;
+            int scanFrom = 0;
+            ByteBuffer index = mapIndex(day);
+            if (index != null) {
+                int indexed = Math.min(index.getInt(0), segment.end);
+                int entries = (index.capacity() - 4) / 8;
+                for (int entry = firstEntry(index, entries, hash); entry < entries; entry++) {
+                    long key = index.getLong(4 + 8 * entry);
+                    int offset = (int) key;
+                    if ((int) (key >>> 32) != hash) break;
+                    if (offset < indexed && segment.isAnimal(offset, id)) addEvent(events, segment, offset, day, animalId, type);
+                }
+                scanFrom = indexed;
+            }
+            for (int offset = scanFrom; offset < segment.end; offset = segment.next(offset)) {
+                if (segment.isAnimal(offset, id)) addEvent(events, segment, offset, day, animalId, type);
+            }
+        }
+        return events;
+    }
+
+    // IDs of animals given the value (ignoring case) between two dates (inclusive), e.g. marked sick this week
+    public Set<String> animalsWith(EventType type, String value, LocalDate from, LocalDate to) throws IOException {
+        if (type == EventType.WEIGHT) {
+            throw new IllegalArgumentException("Weights aren't matched by value");
+        }
+        Set<String> animals = new TreeSet<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            Segment segment = mapSegment(segmentFile(day));
+            if (segment == null) continue;
+            for (int offset = 0; offset < segment.end; offset = segment.next(offset)) {
+                if (segment.typeAndTime(offset) >>> TYPE_SHIFT == type.ordinal()
+                        && segment.value(offset).equalsIgnoreCase(value)) {
+                    animals.add(segment.animalId(offset));
+                }
+            }
+        }
+        return animals;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeSegment();
+    }
+
+    private static byte[] record(Event event) {
+        byte[] id = event.animalId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > 0xFFFF) {
+            throw new IllegalArgumentException("Animal ID too long for the history: " + event.animalId);
+        }
+        byte[] text = event.type == EventType.WEIGHT ? null : event.value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + id.length + (text == null ? 8 : text.length));
+        record.putInt(record.capacity() - 4);
+        record.putInt(event.type.ordinal() << TYPE_SHIFT | event.time.toLocalTime().toSecondOfDay());
+        record.putShort((short) id.length).put(id);
+        if (text == null) {
+            record.putLong(Double.doubleToLongBits(Double.parseDouble(event.value)));
+        } else {
+            record.put(text);
+        }
+        return record.array();
+    }
+
+    private void writeRecords(LocalDate day, ByteArrayOutputStream records) throws IOException {
+        if (records.size() == 0) return;
+
+        if (!day.equals(openDay)) {
+            closeSegment();
+            openSegment = FileChannel.open(segmentFile(day).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = openSegment.size();
+            long whole = size == 0 ? 0 : wholeLength(openSegment.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            if (whole < size) {
+                openSegment.truncate(whole); // Torn record from a crash
+            }
+            openSegment.position(whole);
+            openDay = day;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+        while (buffer.hasRemaining()) {
+            openSegment.write(buffer);
+        }
+        records.reset();
+    }
+
+    private void closeSegment() throws IOException {
+        if (openSegment == null) return;
+        openSegment.force(false);
+        openSegment.close();
+        openSegment = null;
+        writeIndex(openDay);
+        openDay = null;
+    }
+
+    // Writes the day's index over every record of its segment, replacing any older one
+    private void writeIndex(LocalDate day) throws IOException {
+        Segment segment = mapSegment(segmentFile(day));
+        if (segment == null) return;
+        List<Long> keys = new ArrayList<>();
+        for (int offset = 0; offset < segment.end; offset = segment.next(offset)) {
+            keys.add((long) segment.animalId(offset).hashCode() << 32 | offset);
+        }
+        long[] sorted = new long[keys.size()];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = keys.get(i);
+        Arrays.sort(sorted);
+
+        File index = indexFile(day);
+        File temp = new File(index.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(segment.end);
+            for (long key : sorted) out.writeLong(key);
+            out.flush();
+            stream.getFD().sync();
+        }
+        AnimalSnapshot.publish(temp, index, 0);
+    }
+
+    // Bytes of the whole records at the start of a segment, leaving out one cut short by a crash
+    private static int wholeLength(ByteBuffer records) {
+        int end = 0;
+        while (records.capacity() - end >= 4) {
+            int length = records.getInt(end);
+            if (length < RECORD_HEADER - 4 || length > records.capacity() - end - 4) break;
+            end += 4 + length;
+        }
+        return end;
+    }
+
+    // First index entry of the hash, or where it would be, by binary search on the sorted keys
+    private static int firstEntry(ByteBuffer index, int entries, int hash) {
+        long target = (long) hash << 32;
+        int low = 0, high = entries;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (index.getLong(4 + 8 * middle) < target) low = middle + 1; else high = middle;
+        }
+        return low;
+    }
+
+    private static void addEvent(List<Event> events, Segment segment, int offset, LocalDate day,
+                                 String animalId, EventType type) {
+        int typeAndTime = segment.typeAndTime(offset);
+        if (type != null && typeAndTime >>> TYPE_SHIFT != type.ordinal()) return;
+        EventType eventType = EventType.values()[typeAndTime >>> TYPE_SHIFT];
+        LocalTime time = LocalTime.ofSecondOfDay(typeAndTime & ((1 << TYPE_SHIFT) - 1));
+        events.add(new Event(eventType, animalId, segment.value(offset), day.atTime(time)));
+    }
+
+    // Maps a segment file, or returns null if it has no whole record
+    private static Segment mapSegment(File file) throws IOException {
+        if (!file.exists()) return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length == 0) return null;
+            Segment segment = new Segment(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+            return segment.end == 0 ? null : segment;
+        }
+    }
+
+    // The day's index, or null if it has none or it is unreadable, so the segment is scanned instead
+    private ByteBuffer mapIndex(LocalDate day) throws IOException {
+        File file = indexFile(day);
+        if (!file.exists()) return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 4 || (size - 4) % 8 != 0) return null;
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private File segmentFile(LocalDate day) {
+        return new File(directory, day + ".events");
+    }
+
+    private File indexFile(LocalDate day) {
+        return new File(directory, day + ".idx");
+    }
+}
@@ -0,0 +1,361 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+// Append-only journal of animal mutations, replayed on top of the last snapshot at startup.
+// Every record is a single line: "<crc32>\t<op>\t<field>\t<field>..." with tabs, newlines and
+// backslashes escaped inside fields. Records hold absolute values, so replaying one twice is harmless.
+class AnimalJournal implements Closeable {
+    // How often appended records are forced to the storage device
+    enum FsyncPolicy { ALWAYS, INTERVAL, NEVER }
+
+    static final String REGISTER = "REGISTER"; // animal record line
+    static final String HEALTH = "HEALTH"; // id, date, status, time of day
+    static final String FEEDING = "FEEDING"; // id, date, feeding data, time of day
+    static final String WEIGHT = "WEIGHT"; // id, date, weight in kg, time of day
+    static final String CHECKPOINT = "CHECKPOINT"; // Never written; asks for a full snapshot instead
+
+    private static final long FSYNC_INTERVAL_MS = 1000;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final File sealedFile;
+    private final FsyncPolicy fsyncPolicy;
+    private final long compactionThreshold;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileOutputStream out;
+    private long size;
+    private long lastSync;
+    private Future<?> compaction;
+    private volatile IOException checkpointFailure;
+
+    public AnimalJournal(File snapshotFile, FsyncPolicy fsyncPolicy, long compactionThreshold) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = new File(snapshotFile.getPath() + ".journal");
+        this.sealedFile = new File(snapshotFile.getPath() + ".journal.sealed");
+        this.fsyncPolicy = fsyncPolicy;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    // Replays any sealed and live journal records into the map, then opens the journal for appending.
+    // A torn or corrupt tail left by a crash is cut off so new records follow the last valid one.
+    public int replayInto(Map<String, Animal> animals) throws IOException {
+        int applied = 0;
+        if (sealedFile.exists()) {
+            applied += (int) replayFile(sealedFile, animals)[0];
+        }
+
+        long validLength = 0;
+        if (journalFile.exists()) {
+            long[] result = replayFile(journalFile, animals);
+            applied += (int) result[0];
+            validLength = result[1];
+        }
+
+        out = new FileOutputStream(journalFile, true);
+        if (out.getChannel().size() > validLength) {
+            out.getChannel().truncate(validLength);
+        }
+        size = validLength;
+        lastSync = System.currentTimeMillis();
+        return applied;
+    }
+
+    public void append(String op, String... fields) throws IOException {
+        String[] record = new String[fields.length + 1];
+        record[0] = op;
+        System.arraycopy(fields, 0, record, 1, fields.length);
+        appendAll(Collections.singletonList(record));
+    }
+
+    // Appends several records ({op, field, field...}) with a single write and at most one fsync
+    public synchronized void appendAll(List<String[]> records) throws IOException {
+        if (out == null) {
+            throw new IOException("Journal is not open");
+        }
+        throwIfCheckpointFailed();
+
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        for (String[] record : records) {
+            batch.write(encode(record[0], Arrays.copyOfRange(record, 1, record.length)));
+        }
+        batch.writeTo(out);
+
+        long now = System.currentTimeMillis();
+        if (fsyncPolicy == FsyncPolicy.ALWAYS
+                || (fsyncPolicy == FsyncPolicy.INTERVAL && now - lastSync >= FSYNC_INTERVAL_MS)) {
+            out.getFD().sync();
+            lastSync = now;
+        }
+
+        size += batch.size();
+        if (size >= compactionThreshold && (compaction == null || compaction.isDone())) {
+            seal();
+            compaction = compactor.submit(this::compact);
+        }
+    }
+
+    // Snapshots the given state and empties the journal, e.g. after a bulk import where one
+    // snapshot is much cheaper than journaling every record. The herd is captured here, the live
+    // journal is sealed and appends carry on in a fresh one while the compactor writes the capture.
+    // Until that write is on disk the old snapshot and the sealed journal are still what a restart
+    // loads; if it fails, the next append or checkpoint throws so the caller can save in full.
+    public synchronized void checkpoint(Collection<Animal> animals) throws IOException {
+        if (out == null) {
+            throw new IOException("Journal is not open");
+        }
+        awaitCompaction();
+        throwIfCheckpointFailed();
+
+        AnimalSnapshot.View view = AnimalSnapshot.capture(animals);
+        seal();
+        compaction = compactor.submit(() -> writeCheckpoint(view));
+    }
+
+    // True if a background checkpoint never reached disk, so the journal alone can't restore the herd
+    public boolean checkpointFailed() {
+        return checkpointFailure != null;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (out != null) {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                out.getFD().sync();
+            }
+            out.close();
+            out = null;
+        }
+    }
+
+    // Removes every journal file; only valid after a full snapshot of the current state has been written
+    public void discard() throws IOException {
+        close();
+        Files.deleteIfExists(journalFile.toPath());
+        Files.deleteIfExists(sealedFile.toPath());
+    }
+
+    // Moves the live journal aside so the compactor can fold it into a new snapshot
+    private void seal() throws IOException {
+        out.getFD().sync();
+        out.close();
+
+        try {
+            moveToSealed();
+        } finally {
+            out = new FileOutputStream(journalFile, true);
+            size = out.getChannel().size();
+            lastSync = System.currentTimeMillis();
+        }
+    }
+
+    private void moveToSealed() throws IOException {
+        if (sealedFile.exists()) {
+            // A previous compaction failed; keep its records ahead of the newer ones
+            try (FileOutputStream sealed = new FileOutputStream(sealedFile, true)) {
+                Files.copy(journalFile.toPath(), sealed);
+                sealed.getFD().sync();
+            }
+            Files.delete(journalFile.toPath());
+        } else {
+            Files.move(journalFile.toPath(), sealedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // Rebuilds the snapshot from the previous snapshot plus the sealed journal, off the live map entirely
+    private void compact() {
+        try {
+            Map<String, Animal> animals = new LinkedHashMap<>();
+            AnimalSnapshot.read(snapshotFile, animals);
+            replayFile(sealedFile, animals);
+            AnimalSnapshot.write(animals.values(), snapshotFile);
+            Files.delete(sealedFile.toPath());
+        } catch (IOException e) {
+            System.err.println("Journal compaction failed: " + e.getMessage());
+        }
+    }
+
+    private void writeCheckpoint(AnimalSnapshot.View view) {
+        try {
+            AnimalSnapshot.write(view, snapshotFile);
+            Files.delete(sealedFile.toPath());
+        } catch (IOException e) {
+            System.err.println("Journal checkpoint failed: " + e.getMessage());
+            checkpointFailure = e;
+        }
+    }
+
+    private void throwIfCheckpointFailed() throws IOException {
+        IOException failure = checkpointFailure;
+        if (failure != null) {
+            throw new IOException("Checkpoint failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    private void awaitCompaction() throws IOException {
+        if (compaction == null) return;
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for compaction", e);
+        } catch (ExecutionException e) {
+            // compact() and writeCheckpoint() report their own failures
+        }
+    }
+
+    // Returns {records applied, byte length of the valid prefix}
+    private static long[] replayFile(File file, Map<String, Animal> animals) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        long applied = 0;
+        int start = 0;
+
+        while (start < data.length) {
+            int end = start;
+            while (end < data.length && data[end] != '\n') end++;
+            if (end == data.length) break; // Unterminated tail from an interrupted write
+
+            String[] record = decode(data, start, end);
+            if (record == null) break; // Checksum mismatch, nothing after this point can be trusted
+
+            if (apply(record, animals)) applied++;
+            start = end + 1;
+        }
+
+        if (start < data.length) {
+            System.err.println("Journal " + file.getName() + ": ignoring " + (data.length - start)
+                    + " corrupt bytes at offset " + start);
+        }
+        return new long[]{applied, start};
+    }
+
+    // Applies one record to the animals it names; false if it doesn't apply (unknown animal or op)
+    static boolean apply(String[] record, Map<String, Animal> animals) {
+        switch (record[0]) {
+            case REGISTER: {
+                Animal animal = Animal.fromString(record[1]);
+                if (animal == null) return false;
+                animals.put(animal.getId(), animal);
+                return true;
+            }
+            case HEALTH: {
+                Animal animal = animals.get(record[1]);
+                if (animal == null) return false;
+                animal.updateHealthStatus(record[3], LocalDate.parse(record[2]));
+                return true;
+            }
+            case FEEDING: {
+                Animal animal = animals.get(record[1]);
+                if (animal == null) return false;
+                animal.logFeedingData(record[3], LocalDate.parse(record[2]));
+                return true;
+            }
+            case WEIGHT: {
+                Animal animal = animals.get(record[1]);
+                if (animal == null) return false;
+                LocalTime time = record.length > 4 ? LocalTime.parse(record[4]) : LocalTime.MIDNIGHT;
+                animal.updateWeight(Double.parseDouble(record[3]), LocalDate.parse(record[2]).atTime(time)); // Stale ones drop again
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    // ID of the animal a record changes, null for CHECKPOINT
+    static String animalId(String[] record) {
+        switch (record[0]) {
+            case REGISTER: return AnimalRecordFormat.parseId(record[1]);
+            case CHECKPOINT: return null;
+            default: return record[1];
+        }
+    }
+
+    private static byte[] encode(String op, String... fields) {
+        StringBuilder body = new StringBuilder(op);
+        for (String field : fields) {
+            body.append('\t');
+            escape(field, body);
+        }
+
+        byte[] bodyBytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+
+        String checksum = String.format("%08x\t", crc.getValue());
+        byte[] record = new byte[checksum.length() + bodyBytes.length + 1];
+        System.arraycopy(checksum.getBytes(StandardCharsets.US_ASCII), 0, record, 0, checksum.length());
+        System.arraycopy(bodyBytes, 0, record, checksum.length(), bodyBytes.length);
+        record[record.length - 1] = '\n';
+        return record;
+    }
+
+    private static String[] decode(byte[] data, int start, int end) {
+        if (end - start < 10 || data[start + 8] != '\t') return null;
+
+        CRC32 crc = new CRC32();
+        crc.update(data, start + 9, end - start - 9);
+        try {
+            long expected = Long.parseLong(new String(data, start, 8, StandardCharsets.US_ASCII), 16);
+            if (expected != crc.getValue()) return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        String[] fields = new String(data, start + 9, end - start - 9, StandardCharsets.UTF_8).split("\t", -1);
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = unescape(fields[i]);
+        }
+        return fields;
+    }
+
+    private static void escape(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) return value;
+
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,320 @@
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The text record format of .fdf files and journal registrations:
+//   ID: <id>, Breed: <breed>, Age: <n>, Weight: <w>kg, RFID: <tag>, Health: <status>, Feeding: <note>, Updated: <date>[, Weighed: <date-time>]
+// Weighed, when the weight came from a scale, is when that reading was taken.
+// Writers escape '\' and ',' in values with a backslash. Older files have no escapes, so a
+// field only ends at a ", " followed by the next field's label; a feeding note such as
+// "Fed hay, then grain" reads back whole either way.
+//
+// Parsing is one pass over the line: labels are matched in place, numbers and the date are
+// read digit by digit, and only the text values become strings.
+final class AnimalRecordFormat {
+    private static final String[] LABELS = {"ID", "Breed", "Age", "Weight", "RFID", "Health", "Feeding", "Updated", "Weighed"};
+    private static final int UPDATED = 7; // Optional, like WEIGHED after it
+    private static final int WEIGHED = 8;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    // Lines that couldn't be read while loading a file, by line number
+    static final class Report {
+        private static final int MAX_KEPT = 100; // A corrupt file reports its first errors, not all of them
+
+        private final String source;
+        private final List<String> errors = new ArrayList<>();
+        private int errorCount;
+        private int parsedCount;
+
+        Report(String source) {
+            this.source = source;
+        }
+
+        void parsed() {
+            parsedCount++;
+        }
+
+        void error(int lineNumber, String message) {
+            if (errorCount++ < MAX_KEPT) errors.add(source + " line " + lineNumber + ": " + message);
+        }
+
+        public int getParsedCount() { return parsedCount; }
+        public int getErrorCount() { return errorCount; }
+
+        // The first errors, one message each
+        public List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        public String summary() {
+            return source + ": " + parsedCount + " records read, " + errorCount + " lines skipped";
+        }
+    }
+
+    private AnimalRecordFormat() {
+    }
+
+    public static String format(Animal animal) {
+        StringBuilder out = new StringBuilder(128);
+        format(animal, out);
+        return out.toString();
+    }
+
+    // Appends the record without a line break, so a writer can reuse one builder for a whole file
+    static void format(Animal animal, StringBuilder out) {
+        Animal.State state = animal.getState();
+        out.append("ID: ");
+        appendEscaped(out, animal.getId());
+        out.append(", Breed: ");
+        appendEscaped(out, animal.getBreed());
+        out.append(", Age: ").append(animal.getAge());
+        out.append(", Weight: ").append(state.weight).append("kg, RFID: ");
+        appendEscaped(out, animal.getRFIDTag());
+        out.append(", Health: ");
+        appendEscaped(out, state.healthStatus());
+        out.append(", Feeding: ");
+        appendEscaped(out, state.feedingData());
+        out.append(", Updated: ").append(state.lastUpdated());
+        if (state.weighedAt != 0) out.append(", Weighed: ").append(state.weighed());
+    }
+
+    // Parses one record; the message of the exception says which field is wrong and where
+    public static Animal parse(CharSequence line) {
+        Cursor cursor = new Cursor(line);
+        String id = cursor.text(0);
+        String breed = cursor.text(1);
+        int age = cursor.integer(2);
+        double weight = cursor.weight(3);
+        String rfidTag = cursor.text(4);
+        String healthStatus = cursor.text(5);
+        String feedingData = cursor.text(6);
+        LocalDate lastUpdated = cursor.atEnd() ? LocalDate.now() : cursor.date(UPDATED);
+        long weighedAt = cursor.atEnd() ? 0 : cursor.weighedAt(WEIGHED);
+
+        if (id.isEmpty()) throw cursor.error("empty ID");
+        if (rfidTag.isEmpty()) throw cursor.error("empty RFID tag");
+        return new Animal(id, breed, age, weight, rfidTag, healthStatus, feedingData, lastUpdated, weighedAt);
+    }
+
+    // Just the ID field of a record
+    static String parseId(CharSequence line) {
+        return new Cursor(line).text(0);
+    }
+
+    // Parses one line of a file into the report; blank lines are skipped, bad ones reported
+    static Animal parse(CharSequence line, int lineNumber, Report report) {
+        if (isBlank(line)) return null;
+        try {
+            Animal animal = parse(line);
+            report.parsed();
+            return animal;
+        } catch (IllegalArgumentException e) {
+            report.error(lineNumber, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void appendEscaped(StringBuilder out, String value) {
+        int length = value.length();
+        int i = 0;
+        while (i < length && !isEscapable(value.charAt(i))) i++;
+        if (i == length) {
+            out.append(value); // Nearly always: nothing to escape, so copy in one go
+            return;
+        }
+        out.append(value, 0, i);
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (isEscapable(c)) out.append('\\');
+            out.append(c);
+        }
+    }
+
+    private static boolean isEscapable(char c) {
+        return c == '\\' || c == ',';
+    }
+
+    private static boolean isBlank(CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (!Character.isWhitespace(line.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    // Reads the fields of one line in order
+    private static final class Cursor {
+        private final CharSequence line;
+        private final int length;
+        private int position;
+
+        Cursor(CharSequence line) {
+            this.line = line;
+            this.length = line.length();
+        }
+
+        boolean atEnd() {
+            return position >= length;
+        }
+
+        String text(int field) {
+            int start = label(field);
+            int end = valueEnd(field);
+            StringBuilder unescaped = null;
+            for (int i = start; i < end; i++) {
+                char c = line.charAt(i);
+                if (c == '\\' && i + 1 < end && isEscapable(line.charAt(i + 1))) {
+                    if (unescaped == null) unescaped = new StringBuilder(end - start).append(line, start, i);
+                    c = line.charAt(++i);
+                }
+                if (unescaped != null) unescaped.append(c);
+            }
+            position = end;
+            return unescaped != null ? unescaped.toString() : line.subSequence(start, end).toString();
+        }
+
+        int integer(int field) {
+            int start = label(field);
+            int end = valueEnd(field);
+            int i = start;
+            boolean negative = i < end && line.charAt(i) == '-';
+            if (negative) i++;
+            if (i == end) throw error(LABELS[field] + " is not a number");
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = line.charAt(i) - '0';
+                if (digit < 0 || digit > 9) throw error(LABELS[field] + " is not a number");
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE) throw error(LABELS[field] + " is out of range");
+            }
+            position = end;
+            return (int) (negative ? -value : value);
+        }
+
+        // A decimal weight with an optional "kg" suffix. Plain decimals of up to 15 digits are
+        // exact in a double, so one division by a power of ten rounds them correctly; anything
+        // else (exponents, longer numbers) goes to Double.parseDouble.
+        double weight(int field) {
+            int start = label(field);
+            int end = valueEnd(field);
+            int numberEnd = end;
+            if (numberEnd - start >= 2 && line.charAt(numberEnd - 2) == 'k' && line.charAt(numberEnd - 1) == 'g') {
+                numberEnd -= 2;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = -1;
+            boolean simple = numberEnd > start;
+            for (int i = start; i < numberEnd && simple; i++) {
+                char c = line.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (decimals >= 0) decimals++;
+                    simple = ++digits <= 15;
+                } else if (c == '.' && decimals < 0) {
+                    decimals = 0;
+                } else {
+                    simple = false;
+                }
+            }
+            position = end;
+            if (simple && digits > 0) {
+                return decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+            }
+            try {
+                return Double.parseDouble(line.subSequence(start, numberEnd).toString());
+            } catch (NumberFormatException e) {
+                throw error(LABELS[field] + " is not a number");
+            }
+        }
+
+        // An ISO date; an unreadable one falls back to today, as records always have
+        LocalDate date(int field) {
+            int start = label(field);
+            int end = valueEnd(field);
+            position = end;
+            if (end - start != 10 || line.charAt(start + 4) != '-' || line.charAt(start + 7) != '-') {
+                return LocalDate.now();
+            }
+            int year = digits(start, 4);
+            int month = digits(start + 5, 2);
+            int day = digits(start + 8, 2);
+            if (year < 0 || month < 0 || day < 0) return LocalDate.now();
+            try {
+                return LocalDate.of(year, month, day);
+            } catch (DateTimeException e) {
+                return LocalDate.now();
+            }
+        }
+
+        // An ISO date-time as epoch seconds; an unreadable one counts as never weighed
+        long weighedAt(int field) {
+            int start = label(field);
+            int end = valueEnd(field);
+            position = end;
+            try {
+                return Animal.weighedAt(LocalDateTime.parse(line.subSequence(start, end)));
+            } catch (DateTimeException e) {
+                return 0;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at column " + (position + 1));
+        }
+
+        private int digits(int start, int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                int digit = line.charAt(i) - '0';
+                if (digit < 0 || digit > 9) return -1;
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        // Skips the ", " before every field but the first and the field's "Label: "
+        private int label(int field) {
+            if (field > 0) {
+                if (!matches(position, ", ")) throw error("expected " + LABELS[field]);
+                position += 2;
+            }
+            String label = LABELS[field];
+            if (!matches(position, label) || !matches(position + label.length(), ": ")) {
+                throw error("expected " + label);
+            }
+            position += label.length() + 2;
+            return position;
+        }
+
+        // The value runs to the next unescaped ", " that starts the following field, or to the end
+        private int valueEnd(int field) {
+            for (int i = position; i < length; i++) {
+                char c = line.charAt(i);
+                if (c == '\\' && i + 1 < length && isEscapable(line.charAt(i + 1))) {
+                    i++;
+                } else if (c == ',' && field < WEIGHED && matches(i, ", ")
+                        && matches(i + 2, LABELS[field + 1]) && matches(i + 2 + LABELS[field + 1].length(), ": ")) {
+                    return i;
+                }
+            }
+            return length;
+        }
+
+        private boolean matches(int at, String text) {
+            if (at + text.length() > length) return false;
+            for (int i = 0; i < text.length(); i++) {
+                if (line.charAt(at + i) != text.charAt(i)) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Where LivestockManagement keeps the herd between runs. The repository streams the stored herd
+// to the manager at startup and is then handed each batch of change records (the AnimalJournal
+// operations) on the persistence thread. Chosen with -Dfarm.storage=snapshot (the default:
+// binary snapshots plus a journal, which work on the whole herd in memory) or -Dfarm.storage=btree
+// (a BTreeStore file with lookups by ID and RFID tag, so only the animals in use need memory).
+interface AnimalRepository extends Closeable {
+    String STORAGE = System.getProperty("farm.storage", "snapshot");
+
+    // Passes each stored animal to the sink in ID order; problems that didn't stop the load are
+    // added to the list
+    void load(Consumer<Animal> sink, List<String> problems);
+
+    // True if the repository saves from the herd map it was opened with, which must then hold
+    // every animal; false if it applies the change records to what it has stored
+    boolean needsWholeHerd();
+
+    // One stored animal as last written, or null
+    Animal findById(String id) throws IOException;
+
+    Animal findByRfid(String rfidTag) throws IOException;
+
+    // Persists one batch of changes, in order
+    void write(List<String[]> changes) throws IOException;
+
+    // Called on the persistence thread when write() threw
+    void writeFailed(List<String[]> changes, Exception error);
+
+    // Writes out anything pending and releases the files; problems go to the reporter
+    @Override
+    void close();
+
+    // Opens the configured repository; the herd map is used only if needsWholeHerd(). Problems
+    // are passed to the reporter as they happen; a B-tree store that won't open falls back to
+    // snapshots, noted in problems.
+    static AnimalRepository open(File dataDirectory, Map<String, Animal> herd, Consumer<String> reporter,
+                                 List<String> problems) {
+        if (STORAGE.equals("btree")) {
+            try {
+                return new BTreeAnimalRepository(dataDirectory, reporter);
+            } catch (IOException e) {
+                problems.add("Error opening the record store, using snapshots instead: " + e.getMessage());
+            }
+        }
+        return new SnapshotAnimalRepository(dataDirectory, herd, reporter);
+    }
+}
@@ -0,0 +1,385 @@
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Incremental search index over animal id, RFID tag, breed and health status.
+// IDs and tags never change once registered, so they get append-only bigram and trigram postings.
+// Breed and health come from small vocabularies, so matching is resolved against the distinct
+// values first and each value keeps a bitset of the animals currently holding it.
+//
+// Query syntax: whitespace separated terms that must all match, each either a bare
+// substring matched against every field or scoped as id:, rfid:, breed: or health:.
+// Values containing spaces can be quoted, e.g. health:"active and playful".
+// Searches share a read lock; adds and updates take the write lock.
+class AnimalSearchIndex {
+    private static final int GRAM = 3;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> docsById = new HashMap<>();
+    private String[] originalIds = new String[1024];
+    private String[] ids = new String[1024];
+    private String[] rfids = new String[1024];
+    private int[] breedCodes = new int[1024];
+    private int[] healthCodes = new int[1024];
+    private int size;
+
+    private final GramTable idGrams = new GramTable();
+    private final GramTable rfidGrams = new GramTable();
+    private final Vocabulary breeds = new Vocabulary();
+    private final Vocabulary healthStatuses = new Vocabulary();
+
+    public void add(Animal animal) {
+        lock.writeLock().lock();
+        try {
+            addLocked(animal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Re-reads the mutable fields of an already indexed animal
+    public void update(Animal animal) {
+        lock.writeLock().lock();
+        try {
+            updateLocked(animal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addLocked(Animal animal) {
+        if (docsById.containsKey(animal.getId())) {
+            updateLocked(animal);
+            return;
+        }
+
+        if (size == ids.length) {
+            int capacity = size * 2;
+            originalIds = Arrays.copyOf(originalIds, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            rfids = Arrays.copyOf(rfids, capacity);
+            breedCodes = Arrays.copyOf(breedCodes, capacity);
+            healthCodes = Arrays.copyOf(healthCodes, capacity);
+        }
+
+        int doc = size++;
+        docsById.put(animal.getId(), doc);
+        originalIds[doc] = animal.getId();
+        ids[doc] = lower(animal.getId());
+        rfids[doc] = lower(animal.getRFIDTag());
+        breedCodes[doc] = breeds.assign(doc, lower(animal.getBreed()), -1);
+        healthCodes[doc] = healthStatuses.assign(doc, lower(animal.getHealthStatus()), -1);
+        addGrams(idGrams, ids[doc], doc);
+        addGrams(rfidGrams, rfids[doc], doc);
+    }
+
+    private void updateLocked(Animal animal) {
+        Integer doc = docsById.get(animal.getId());
+        if (doc == null) {
+            addLocked(animal);
+            return;
+        }
+        breedCodes[doc] = breeds.assign(doc, lower(animal.getBreed()), breedCodes[doc]);
+        healthCodes[doc] = healthStatuses.assign(doc, lower(animal.getHealthStatus()), healthCodes[doc]);
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docsById.clear();
+            idGrams.clear();
+            rfidGrams.clear();
+            breeds.clear();
+            healthStatuses.clear();
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Returns the IDs of matching animals in registration order
+    public List<String> search(String query) {
+        List<String[]> terms = parse(query);
+        if (terms.isEmpty()) return new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            return searchLocked(terms);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<String> searchLocked(List<String[]> terms) {
+        BitSet result = null;
+        for (String[] term : terms) {
+            BitSet matches = match(term[0], term[1]);
+            if (result == null) {
+                result = matches;
+            } else {
+                result.and(matches);
+            }
+            if (result.isEmpty()) break;
+        }
+
+        List<String> matchingIds = new ArrayList<>(result.cardinality());
+        for (int doc = result.nextSetBit(0); doc >= 0; doc = result.nextSetBit(doc + 1)) {
+            matchingIds.add(originalIds[doc]);
+        }
+        return matchingIds;
+    }
+
+    private BitSet match(String field, String value) {
+        BitSet matches = new BitSet(size);
+        switch (field) {
+            case "id":
+                matchUnique(idGrams, ids, value, matches);
+                break;
+            case "rfid":
+                matchUnique(rfidGrams, rfids, value, matches);
+                break;
+            case "breed":
+                breeds.match(value, matches);
+                break;
+            case "health":
+                healthStatuses.match(value, matches);
+                break;
+            default:
+                matchUnique(idGrams, ids, value, matches);
+                matchUnique(rfidGrams, rfids, value, matches);
+                breeds.match(value, matches);
+                healthStatuses.match(value, matches);
+        }
+        return matches;
+    }
+
+    // Intersects the n-gram postings of the value, then confirms each candidate really contains it
+    private void matchUnique(GramTable grams, String[] values, String value, BitSet matches) {
+        if (value.length() < GRAM - 1) {
+            // Single characters aren't indexed
+            for (int doc = 0; doc < size; doc++) {
+                if (values[doc].contains(value)) matches.set(doc);
+            }
+            return;
+        }
+
+        int gram = Math.min(GRAM, value.length());
+        List<IntList> postings = new ArrayList<>();
+        for (int i = 0; i + gram <= value.length(); i++) {
+            IntList list = grams.get(GramTable.key(value, i, gram));
+            if (list == null) return;
+            postings.add(list);
+        }
+
+        // Intersect the rarest grams first so the candidate set shrinks quickly
+        postings.sort(Comparator.comparingInt(list -> list.size));
+        IntList candidates = postings.get(0);
+        for (int i = 1; i < postings.size() && candidates.size > 0; i++) {
+            candidates = candidates.intersect(postings.get(i));
+        }
+
+        for (int i = 0; i < candidates.size; i++) {
+            int doc = candidates.values[i];
+            if (gram < GRAM || values[doc].contains(value)) matches.set(doc);
+        }
+    }
+
+    private static void addGrams(GramTable grams, String value, int doc) {
+        for (int gram = GRAM - 1; gram <= GRAM; gram++) {
+            for (int i = 0; i + gram <= value.length(); i++) {
+                grams.getOrCreate(GramTable.key(value, i, gram)).addOnce(doc);
+            }
+        }
+    }
+
+    // Splits a query into {field, value} pairs; the field is empty for unscoped terms
+    static List<String[]> parse(String query) {
+        List<String[]> terms = new ArrayList<>();
+        String text = lower(query.trim());
+        int i = 0;
+
+        while (i < text.length()) {
+            while (i < text.length() && Character.isWhitespace(text.charAt(i))) i++;
+            if (i >= text.length()) break;
+
+            String field = "";
+            int colon = text.indexOf(':', i);
+            int space = indexOfWhitespace(text, i);
+            if (colon > i && colon < space) {
+                String candidate = text.substring(i, colon);
+                if (candidate.equals("id") || candidate.equals("rfid")
+                        || candidate.equals("breed") || candidate.equals("health")) {
+                    field = candidate;
+                    i = colon + 1;
+                }
+            }
+
+            String value;
+            if (i < text.length() && text.charAt(i) == '"') {
+                int close = text.indexOf('"', i + 1);
+                if (close < 0) close = text.length();
+                value = text.substring(i + 1, close);
+                i = close + 1;
+            } else {
+                int end = indexOfWhitespace(text, i);
+                value = text.substring(i, end);
+                i = end;
+            }
+
+            if (!value.isEmpty()) {
+                terms.add(new String[]{field, value});
+            }
+        }
+        return terms;
+    }
+
+    private static int indexOfWhitespace(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) return i;
+        }
+        return text.length();
+    }
+
+    private static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    // Distinct lower-cased values of a low-cardinality field with the animals holding each one
+    private static class Vocabulary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final List<BitSet> holders = new ArrayList<>();
+
+        // Moves the document from its previous code (or -1) to the value's code and returns the new code
+        int assign(int doc, String value, int previousCode) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+                holders.add(new BitSet());
+            }
+            if (previousCode >= 0 && previousCode != code) {
+                holders.get(previousCode).clear(doc);
+            }
+            holders.get(code).set(doc);
+            return code;
+        }
+
+        void match(String text, BitSet matches) {
+            for (int code = 0; code < values.size(); code++) {
+                if (values.get(code).contains(text)) {
+                    matches.or(holders.get(code));
+                }
+            }
+        }
+
+        void clear() {
+            codes.clear();
+            values.clear();
+            holders.clear();
+        }
+    }
+
+    // Open-addressing map from a packed n-gram to its postings, avoiding a substring and a boxed
+    // key per lookup. Up to three UTF-16 chars pack into a long, with the length in the top bits.
+    private static class GramTable {
+        private long[] keys = new long[1024];
+        private IntList[] values = new IntList[1024];
+        private int size;
+
+        static long key(String value, int start, int length) {
+            long key = length;
+            for (int i = start; i < start + length; i++) {
+                key = (key << 16) | value.charAt(i);
+            }
+            return key;
+        }
+
+        IntList get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return values[slot];
+            }
+            return null;
+        }
+
+        IntList getOrCreate(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            for (; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return values[slot];
+            }
+
+            IntList list = new IntList();
+            keys[slot] = key;
+            values[slot] = list;
+            if (++size * 2 > keys.length) grow();
+            return list;
+        }
+
+        void clear() {
+            keys = new long[1024];
+            values = new IntList[1024];
+            size = 0;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            IntList[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new IntList[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] == null) continue;
+                int slot = slot(oldKeys[i], mask);
+                while (values[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+    }
+
+    // Sorted, growable postings list of document numbers
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) return;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        IntList intersect(IntList other) {
+            IntList result = new IntList();
+            result.values = new int[Math.max(1, Math.min(size, other.size))];
+            int i = 0, j = 0;
+            while (i < size && j < other.size) {
+                if (values[i] < other.values[j]) i++;
+                else if (values[i] > other.values[j]) j++;
+                else {
+                    result.values[result.size++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+}
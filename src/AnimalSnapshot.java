@@ -0,0 +1,336 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Reads and writes whole-herd snapshots.
+// The binary format is columnar: a header, dictionaries for breed, health and feeding strings,
+// length-prefixed ID and RFID columns, then primitive columns for the dictionary codes, age,
+// weight, last-updated epoch day and the epoch second the weight was read at. A CRC32 of
+// everything between the header and itself ends the file. It is loaded through a memory-mapped
+// buffer, checking every count and length against the bytes actually there, so a corrupt file
+// fails to load rather than allocating whatever it says.
+// The legacy one-line-per-animal .fdf text format is kept for import and export.
+class AnimalSnapshot {
+    private static final int MAGIC = 0x46534E50; // "FSNP"
+    private static final int VERSION = 1;
+
+    // Older snapshots kept beside the current one as <file>.1 (newest) to <file>.N, overridable
+    // with -Dfarm.snapshot.generations=N; a snapshot that won't load falls back to the next one
+    static final int GENERATIONS = Integer.getInteger("farm.snapshot.generations", 2);
+
+    // The herd as it was at one moment: every animal with the state it had when captured.
+    // Capturing copies references only, so it is quick enough to take on any thread, and the
+    // slow part, writing, can then happen elsewhere while the herd keeps changing.
+    static final class View {
+        final List<Animal> herd;
+        final Animal.State[] states;
+
+        private View(List<Animal> herd, Animal.State[] states) {
+            this.herd = herd;
+            this.states = states;
+        }
+    }
+
+    static View capture(Collection<Animal> animals) {
+        List<Animal> herd = new ArrayList<>(animals);
+        Animal.State[] states = new Animal.State[herd.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = herd.get(i).getState();
+        }
+        return new View(herd, states);
+    }
+
+    static void write(Collection<Animal> animals, File file) throws IOException {
+        write(capture(animals), file);
+    }
+
+    // Writes to a temp file, forces it to disk, then swaps it in with an atomic rename, so the
+    // snapshot on disk is always either the old one or the complete new one
+    static void write(View view, File file) throws IOException {
+        List<Animal> herd = view.herd;
+        Animal.State[] states = view.states;
+        Dictionary breeds = new Dictionary();
+        Dictionary healthStatuses = new Dictionary();
+        Dictionary feedingNotes = new Dictionary();
+        int[] breedCodes = new int[herd.size()];
+        int[] healthCodes = new int[herd.size()];
+        int[] feedingCodes = new int[herd.size()];
+        for (int i = 0; i < herd.size(); i++) {
+            breedCodes[i] = breeds.code(herd.get(i).getBreed());
+            healthCodes[i] = healthStatuses.code(states[i].healthStatus());
+            feedingCodes[i] = feedingNotes.code(states[i].feedingData());
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             CheckedOutputStream checked = new CheckedOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            checked.getChecksum().reset(); // The checksum covers the body only
+            out.writeInt(herd.size());
+
+            breeds.writeTo(out);
+            healthStatuses.writeTo(out);
+            feedingNotes.writeTo(out);
+
+            for (Animal animal : herd) writeString(out, animal.getId());
+            for (Animal animal : herd) writeString(out, animal.getRFIDTag());
+            for (int code : breedCodes) out.writeInt(code);
+            for (int code : healthCodes) out.writeInt(code);
+            for (int code : feedingCodes) out.writeInt(code);
+            for (Animal animal : herd) out.writeInt(animal.getAge());
+            for (Animal.State state : states) out.writeDouble(state.weight);
+            for (Animal.State state : states) out.writeInt(state.lastUpdatedDay);
+            for (Animal.State state : states) out.writeLong(state.weighedAt);
+            out.writeInt((int) checked.getChecksum().getValue());
+
+            out.flush();
+            channel.force(true);
+        }
+        publish(temp, file, GENERATIONS);
+    }
+
+    // Loads the newest snapshot that reads cleanly: the current one, else the previous generations
+    // in turn. Returns the file loaded, or null if there is none; problems with newer ones are added
+    // to the list. Throws only if every snapshot on disk is unreadable.
+    static File readNewest(File file, Map<String, Animal> animals, List<String> problems) throws IOException {
+        IOException failure = null;
+        for (int generation = 0; generation <= GENERATIONS; generation++) {
+            File candidate = generation == 0 ? file : generation(file, generation);
+            if (!candidate.exists()) continue;
+            try {
+                animals.clear();
+                read(candidate, animals);
+                return candidate;
+            } catch (IOException e) {
+                problems.add("Snapshot " + candidate.getName() + " could not be read: " + e.getMessage());
+                if (failure == null) failure = e;
+            } catch (RuntimeException e) { // Whatever else a corrupt file trips, the next generation may load
+                problems.add("Snapshot " + candidate.getName() + " could not be read: " + e);
+                if (failure == null) failure = new IOException(candidate.getName() + " is corrupt", e);
+            }
+        }
+        animals.clear();
+        if (failure != null) throw failure;
+        return null;
+    }
+
+    static File generation(File file, int generation) {
+        return new File(file.getPath() + "." + generation);
+    }
+
+    static void read(File file, Map<String, Animal> animals) throws IOException {
+        if (!file.exists()) return;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a herd snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file.getName() + " has unsupported snapshot version " + version);
+            }
+            verifyChecksum(file, buffer);
+
+            int count = buffer.getInt();
+            // Two string lengths, three codes, age, weight and date, and the weighed time
+            checkCount(file, count, 4 + 4 + 12 + 4 + 8 + 4 + 8, buffer);
+            byte[] scratch = new byte[256];
+            Breed[] breeds = Arrays.stream(readDictionary(file, buffer, scratch)).map(Breed::of).toArray(Breed[]::new);
+            int[] healthCodes = intern(readDictionary(file, buffer, scratch), Animal.HEALTH_STATUSES);
+            String[] feedingNotes = readDictionary(file, buffer, scratch); // Shared within this herd only
+
+            String[] ids = new String[count];
+            String[] rfids = new String[count];
+            for (int i = 0; i < count; i++) ids[i] = readString(file, buffer, scratch);
+            for (int i = 0; i < count; i++) rfids[i] = readString(file, buffer, scratch);
+
+            // Primitive columns are fixed width, so each one starts at a known offset
+            int codes = buffer.position();
+            int ages = codes + 3 * 4 * count;
+            int weights = ages + 4 * count;
+            int dates = weights + 8 * count;
+            int weighed = dates + 4 * count;
+
+            for (int i = 0; i < count; i++) {
+                Animal animal = new Animal(ids[i],
+                        breeds[buffer.getInt(codes + 4 * i)],
+                        buffer.getInt(ages + 4 * i),
+                        buffer.getDouble(weights + 8 * i),
+                        rfids[i],
+                        healthCodes[buffer.getInt(codes + 4 * (count + i))],
+                        feedingNotes[buffer.getInt(codes + 4 * (2 * count + i))],
+                        buffer.getInt(dates + 4 * i),
+                        buffer.getLong(weighed + 8 * i));
+                animals.put(animal.getId(), animal);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException(file.getName() + " is truncated", e);
+        } catch (RuntimeException e) {
+            throw new IOException(file.getName() + " is corrupt: " + e, e);
+        }
+    }
+
+    // Checks the trailing CRC32 against the body, then limits the buffer to the body
+    private static void verifyChecksum(File file, MappedByteBuffer buffer) throws IOException {
+        int end = buffer.limit() - 4;
+        if (end < buffer.position()) throw new IOException(file.getName() + " is truncated");
+        ByteBuffer body = buffer.duplicate();
+        body.limit(end);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(end)) {
+            throw new IOException(file.getName() + " fails its checksum");
+        }
+        buffer.limit(end);
+    }
+
+    // A count read from the file, each of at least the given bytes, must fit in what is left
+    private static void checkCount(File file, int count, int bytesEach, ByteBuffer buffer) throws IOException {
+        if (count < 0 || (long) count * bytesEach > buffer.remaining()) {
+            throw new IOException(file.getName() + " is corrupt: count " + count + " doesn't fit in "
+                    + buffer.remaining() + " bytes");
+        }
+    }
+
+    // Reads .fdf text records; lines that aren't records are skipped and noted in the report
+    static void readText(File file, Map<String, Animal> animals, AnimalRecordFormat.Report report) throws IOException {
+        if (!file.exists()) return;
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                Animal animal = AnimalRecordFormat.parse(line, ++lineNumber, report);
+                if (animal != null) {
+                    animals.put(animal.getId(), animal);
+                }
+            }
+        }
+    }
+
+    static void writeText(Collection<Animal> animals, File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            StringBuilder line = new StringBuilder(256);
+            char[] chars = new char[256];
+            for (Animal animal : animals) {
+                line.setLength(0);
+                AnimalRecordFormat.format(animal, line);
+                line.append('\n');
+                if (chars.length < line.length()) chars = new char[line.length() * 2];
+                line.getChars(0, line.length(), chars, 0); // Straight into the writer, no String per line
+                writer.write(chars, 0, line.length());
+            }
+            writer.flush();
+            stream.getFD().sync();
+        }
+        publish(temp, file, 0);
+    }
+
+    // Swaps a fully written temp file in for the target. The current target is first hard-linked
+    // as the newest older generation (after shifting the others down), so there is never a moment
+    // without a complete file under the target name. The directory is synced so the rename
+    // itself survives a power cut.
+    static void publish(File temp, File target, int generations) throws IOException {
+        if (generations > 0 && target.exists()) {
+            for (int generation = generations; generation > 1; generation--) {
+                File older = generation(target, generation - 1);
+                if (older.exists()) {
+                    Files.move(older.toPath(), generation(target, generation).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Path newest = generation(target, 1).toPath();
+            Files.deleteIfExists(newest);
+            try {
+                Files.createLink(newest, target.toPath());
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(target.toPath(), newest); // No hard links here
+            }
+        }
+
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+    }
+
+    static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms can't open a directory; the rename is still atomic, just not yet durable
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(File file, MappedByteBuffer buffer, byte[] scratch) throws IOException {
+        int length = buffer.getInt();
+        checkCount(file, length, 1, buffer);
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Maps the snapshot's own dictionary codes to codes in the shared table
+    private static int[] intern(String[] values, InternTable table) {
+        int[] codes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            codes[i] = table.code(values[i]);
+        }
+        return codes;
+    }
+
+    private static String[] readDictionary(File file, MappedByteBuffer buffer, byte[] scratch) throws IOException {
+        int size = buffer.getInt();
+        checkCount(file, size, 4, buffer); // Each value has at least its length
+        String[] values = new String[size];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(file, buffer, scratch);
+        }
+        return values;
+    }
+
+    // Assigns codes to distinct strings in first-seen order
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+}
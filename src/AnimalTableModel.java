@@ -0,0 +1,106 @@
+import javax.swing.table.AbstractTableModel;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+// Table model that reads animals straight from LivestockManagement instead of copying rows.
+// Rows are only a sorted list of IDs; cell values are looked up when JTable paints them,
+// so only the visible rows are ever materialized. The ID list is an immutable snapshot that
+// is only swapped on the EDT, so registrations on other threads can't change the row count
+// under the table.
+class AnimalTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    static final int HEALTH_COLUMN = 5;
+
+    private static final String[] COLUMNS = {
+            "ID", "Breed", "Age", "Weight (kg)", "RFID Tag", "Health Status", "Last Updated"
+    };
+
+    private final LivestockManagement system;
+    private List<String> rowIds;
+    private boolean filtered;
+
+    public AnimalTableModel(LivestockManagement system) {
+        this.system = system;
+        this.rowIds = system.getSortedAnimalIds();
+    }
+
+    // Shows every animal, backed by the current sorted ID list of the system
+    public void showAll() {
+        rowIds = system.getSortedAnimalIds();
+        filtered = false;
+        fireTableDataChanged();
+    }
+
+    // Shows only the given animals, sorted by ID
+    public void showOnly(Collection<String> ids) {
+        List<String> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        rowIds = sorted;
+        filtered = true;
+        fireTableDataChanged();
+    }
+
+    // Repaints the single row of an animal whose fields changed
+    public void animalChanged(String id) {
+        int row = Collections.binarySearch(rowIds, id);
+        if (row >= 0) {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    // Inserts the row of a newly registered animal when every animal is shown
+    public void animalAdded(String id) {
+        if (filtered) return;
+        int previousCount = rowIds.size();
+        rowIds = system.getSortedAnimalIds();
+        int row = Collections.binarySearch(rowIds, id);
+        if (row >= 0 && rowIds.size() == previousCount + 1) {
+            fireTableRowsInserted(row, row);
+        } else {
+            fireTableDataChanged(); // Other registrations happened in between
+        }
+    }
+
+    public String getIdAt(int row) {
+        return rowIds.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowIds.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false; // Make table non-editable
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        String id = rowIds.get(row);
+        Animal animal = system.getAnimalById(id);
+        if (animal == null) return column == 0 ? id : null;
+
+        switch (column) {
+            case 0: return animal.getId();
+            case 1: return animal.getBreed();
+            case 2: return animal.getAge();
+            case 3: return animal.getWeight();
+            case 4: return animal.getRFIDTag();
+            case 5: return animal.getHealthStatus();
+            case 6: return animal.getLastUpdated().format(DateTimeFormatter.ISO_LOCAL_DATE);
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+// The herd in a BTreeStore file, FarmRecords_v2.fdb: each animal's text record (see
+// AnimalRecordFormat) under "a:<id>" and its ID under "r:<rfid>", so one animal can be read by
+// ID or tag from a few pages without loading the rest. A batch of changes is applied to the stored
+// records of the animals it touches and written as one commit, so the store never needs the herd
+// in memory.
+//
+// On first use an existing snapshot, journal or .fdf file is imported; those files are left as
+// they were and no longer updated.
+class BTreeAnimalRepository implements AnimalRepository {
+    static final String STORE_FILE = "FarmRecords_v2.fdb";
+    private static final String ANIMAL = "a:";
+    private static final String RFID = "r:";
+    private static final int IMPORT_COMMIT_SIZE = 10_000; // Animals per commit while importing
+
+    private final File dataDirectory;
+    private final Consumer<String> reporter;
+    private final BTreeStore store;
+    private final List<String[]> unsaved = new ArrayList<>(); // Changes of a failed batch, applied again with the next one
+
+    BTreeAnimalRepository(File dataDirectory, Consumer<String> reporter) throws IOException {
+        this.dataDirectory = dataDirectory;
+        this.reporter = reporter;
+        this.store = new BTreeStore(new File(dataDirectory, STORE_FILE));
+    }
+
+    @Override
+    public void load(Consumer<Animal> sink, List<String> problems) {
+        try {
+            if (store.getEntryCount() == 0) {
+                importExisting(sink, problems);
+                return;
+            }
+            int[] bad = new int[1];
+            store.scan(ANIMAL, (key, record) -> {
+                try {
+                    sink.accept(decode(record));
+                } catch (IllegalArgumentException e) {
+                    if (bad[0]++ < 10) problems.add("Stored record " + key + " could not be read: " + e.getMessage());
+                }
+            });
+            if (bad[0] > 10) problems.add((bad[0] - 10) + " more stored records could not be read");
+        } catch (IOException e) {
+            problems.add("Error loading data from " + STORE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean needsWholeHerd() {
+        return false;
+    }
+
+    @Override
+    public Animal findById(String id) throws IOException {
+        byte[] record = store.get(ANIMAL + id);
+        return record == null ? null : decode(record);
+    }
+
+    @Override
+    public Animal findByRfid(String rfidTag) throws IOException {
+        byte[] id = store.get(RFID + rfidTag);
+        return id == null ? null : findById(new String(id, StandardCharsets.UTF_8));
+    }
+
+    // Reads the stored record of every animal the batch touches, applies the changes in order and
+    // writes the results back in one commit. Records hold absolute values, so applying a failed
+    // batch again is harmless.
+    @Override
+    public void write(List<String[]> changes) throws IOException {
+        unsaved.addAll(changes);
+        Map<String, Animal> touched = new HashMap<>();
+        for (String[] change : unsaved) {
+            String id = AnimalJournal.animalId(change);
+            if (id == null) continue; // CHECKPOINT: every change is already in the store
+            if (!change[0].equals(AnimalJournal.REGISTER) && !touched.containsKey(id)) {
+                Animal stored = findById(id);
+                if (stored != null) touched.put(id, stored);
+            }
+            AnimalJournal.apply(change, touched);
+        }
+        for (Animal animal : touched.values()) put(animal);
+        store.commit();
+        unsaved.clear();
+    }
+
+    // The changes are kept and applied again with the next batch
+    @Override
+    public void writeFailed(List<String[]> changes, Exception error) {
+        reporter.accept("Error saving data to " + STORE_FILE + ", will retry with the next change: " + error.getMessage());
+    }
+
+    @Override
+    public void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            reporter.accept("Error closing " + STORE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    // Page cache and commit figures of the store
+    public String getStats() {
+        return store.getStats();
+    }
+
+    // Reads the previous files into a temporary map and copies them over in ID order, so the
+    // store's pages fill up one after another
+    private void importExisting(Consumer<Animal> sink, List<String> problems) throws IOException {
+        SnapshotAnimalRepository previous = new SnapshotAnimalRepository(dataDirectory, new HashMap<>(), reporter);
+        if (!previous.exists()) return;
+        int[] count = new int[1];
+        try {
+            previous.load(animal -> {
+                try {
+                    put(animal);
+                    if (++count[0] % IMPORT_COMMIT_SIZE == 0) store.commit();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                sink.accept(animal);
+            }, problems);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            previous.close();
+        }
+        store.commit();
+    }
+
+    private void put(Animal animal) throws IOException {
+        store.put(ANIMAL + animal.getId(), animal.toRecord().getBytes(StandardCharsets.UTF_8));
+        String rfidKey = RFID + animal.getRFIDTag();
+        if (store.get(rfidKey) == null) {
+            store.put(rfidKey, animal.getId().getBytes(StandardCharsets.UTF_8)); // First animal with a tag keeps it
+        }
+    }
+
+    private static Animal decode(byte[] record) {
+        return AnimalRecordFormat.parse(new String(record, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,755 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+// Embedded key-value store in a single file: a B+tree of string keys and byte values in 4 KB pages.
+// The tree is copy-on-write. A change copies the pages on its path from the root and keeps them
+// in memory until commit(), which appends them after the last committed page, forces them to
+// disk, and only then writes the header pointing at the new root. A crash at any point leaves
+// the previous commit intact, so there is no separate log to replay.
+//
+// Committed pages never change, so they are read on demand and kept decoded in an LRU cache of
+// at most cachePages pages (-Dfarm.store.cachePages, default 2048); a lookup costs a few cached
+// page visits, whatever the size of the file. Values over 1 KB are kept in runs of overflow pages.
+// Pages superseded by later commits are reclaimed by rewriting the live tree into a fresh file
+// once they outnumber the live ones. The copy runs on a thread of its own while commits go on; the
+// keys they change are copied again, and the new file is swapped in once nothing is pending.
+//
+// All methods are synchronized; the store is meant for one writer thread and occasional readers.
+class BTreeStore implements Closeable {
+    static final int PAGE_SIZE = 4096;
+    static final int DEFAULT_CACHE_PAGES = Integer.getInteger("farm.store.cachePages", 2048);
+
+    private static final int MAGIC = 0x46444231; // "FDB1"
+    private static final int SLOT_SIZE = 64;     // Two header slots at the start of page 0, written alternately
+    private static final int SLOT_BYTES = 36;    // Slot fields before the checksum
+    private static final int MAX_KEY_BYTES = 512;
+    private static final int MAX_INLINE_VALUE = 1024;
+    private static final byte LEAF = 0;
+    private static final byte BRANCH = 1;
+    private static final byte INLINE = 0;
+    private static final byte OVERFLOW = 1;
+    private static final int NODE_HEADER = 3;          // Type, key count
+    private static final int COMPACT_MIN_GARBAGE = 256; // Pages
+    private static final int COMPACT_COMMIT_PAGES = 1024; // Dirty pages per commit while compacting
+    private static final int COMPACT_CATCH_UP_KEYS = 256; // Changed keys copied per hold of the lock
+
+    private final File file;
+    private final int cachePages;
+    private final boolean autoCompact;
+    private FileChannel channel;
+
+    // The working state; the header written by the last commit holds the committed one
+    private long generation;
+    private int root;      // 0 while the tree is empty
+    private int pageCount; // Pages allocated, the header page included; new pages go after them
+    private int livePages; // Pages reachable from the root
+    private long entries;
+    private Compaction compaction; // Running in the background, or null
+    private boolean closing;
+
+    private final Map<Integer, Node> dirty = new HashMap<>();         // Written by the next commit
+    private final Map<Integer, byte[]> dirtyOverflow = new HashMap<>(); // Overflow values by first page
+    private final LinkedHashMap<Integer, Node> cache;                   // Committed nodes, eldest first
+
+    private long cacheHits;
+    private long cacheMisses;
+    private long commits;
+    private long compactions;
+
+    BTreeStore(File file) throws IOException {
+        this(file, DEFAULT_CACHE_PAGES, true);
+    }
+
+    BTreeStore(File file, int cachePages) throws IOException {
+        this(file, cachePages, true);
+    }
+
+    private BTreeStore(File file, int cachePages, boolean autoCompact) throws IOException {
+        this.file = file;
+        this.cachePages = Math.max(16, cachePages);
+        this.autoCompact = autoCompact;
+        this.cache = new LinkedHashMap<Integer, Node>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Node> eldest) {
+                return size() > BTreeStore.this.cachePages;
+            }
+        };
+        open();
+    }
+
+    // The stored value, or null. The array is shared with the cache and must not be modified.
+    public synchronized byte[] get(String key) throws IOException {
+        ensureOpen();
+        if (root == 0) return null;
+        Node node = node(root);
+        while (!node.leaf) {
+            node = node(node.children.get(childIndex(node, key)));
+        }
+        int index = Collections.binarySearch(node.keys, key);
+        return index < 0 ? null : value(node.values.get(index));
+    }
+
+    // Inserts or replaces a value; visible to get() at once, durable after the next commit()
+    public synchronized void put(String key, byte[] value) throws IOException {
+        ensureOpen();
+        if (utf8Length(key) > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Key longer than " + MAX_KEY_BYTES + " bytes: " + key);
+        }
+        Object stored = value.length > MAX_INLINE_VALUE ? writeOverflow(value) : value;
+        if (compaction != null) compaction.changed.add(key);
+        if (root == 0) {
+            root = newNode(true).page;
+        }
+        Node top = writableRoot();
+        Split split = insert(top, key, stored);
+        if (split != null) {
+            Node newRoot = newNode(false);
+            newRoot.children.add(top.page);
+            newRoot.keys.add(split.key);
+            newRoot.children.add(split.right.page);
+            newRoot.bytes += branchEntrySize(split.key);
+            root = newRoot.page;
+        }
+    }
+
+    // Calls the action for every key that starts with the prefix, in key order
+    public synchronized void scan(String prefix, BiConsumer<String, byte[]> action) throws IOException {
+        ensureOpen();
+        if (root != 0) scan(node(root), prefix, action);
+    }
+
+    // Makes every change since the last commit durable
+    public synchronized void commit() throws IOException {
+        ensureOpen();
+        if (dirty.isEmpty() && dirtyOverflow.isEmpty()) return;
+
+        ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+        for (Node node : dirty.values()) {
+            page.clear();
+            encode(node, page);
+            page.clear();
+            writeFully(page, (long) node.page * PAGE_SIZE);
+        }
+        for (Map.Entry<Integer, byte[]> overflow : dirtyOverflow.entrySet()) {
+            writeFully(ByteBuffer.wrap(overflow.getValue()), (long) overflow.getKey() * PAGE_SIZE);
+        }
+        channel.force(false);
+        writeHeader(generation + 1); // Only now does the new tree become the one a restart reads
+        channel.force(true);
+        generation++;
+        commits++;
+
+        for (Node node : dirty.values()) {
+            node.dirty = false;
+            cache.put(node.page, node);
+        }
+        dirty.clear();
+        dirtyOverflow.clear();
+
+        if (compaction != null) {
+            if (compaction.copied) finishCompaction(compaction);
+        } else if (autoCompact && !closing && getGarbagePages() > Math.max(livePages, COMPACT_MIN_GARBAGE)) {
+            startCompaction();
+        }
+    }
+
+    public synchronized long getEntryCount() {
+        return entries;
+    }
+
+    public synchronized int getLivePages() {
+        return livePages;
+    }
+
+    // Pages in the file that no longer belong to the tree, until the next compaction
+    public synchronized int getGarbagePages() {
+        return pageCount - 1 - livePages;
+    }
+
+    public synchronized String getStats() {
+        long lookups = cacheHits + cacheMisses;
+        return "entries=" + entries + " pages=" + livePages + " garbage=" + getGarbagePages()
+                + " cached=" + cache.size() + "/" + cachePages
+                + String.format(" hit rate=%.1f%%", lookups == 0 ? 0.0 : 100.0 * cacheHits / lookups)
+                + " commits=" + commits + " compactions=" + compactions;
+    }
+
+    // Stops a running compaction, commits anything pending and closes the file
+    @Override
+    public void close() throws IOException {
+        Compaction running;
+        synchronized (this) {
+            if (channel == null) return;
+            closing = true; // The last commit mustn't start another
+            running = compaction;
+            if (running != null) running.cancelled = true;
+        }
+        if (running != null) {
+            try {
+                running.thread.join(); // Gives up at its next check and deletes its file
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel == null) return;
+            try {
+                commit();
+            } finally {
+                channel.close();
+                channel = null;
+                cache.clear();
+            }
+        }
+    }
+
+    private void ensureOpen() {
+        if (channel == null) throw new IllegalStateException(file.getName() + " is closed");
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                generation = 0;
+                root = 0;
+                pageCount = 1;
+                livePages = 0;
+                entries = 0;
+                writeFully(ByteBuffer.allocate(PAGE_SIZE), 0);
+                writeHeader(0);
+                channel.force(true);
+            } else {
+                readHeader();
+            }
+        } catch (IOException e) {
+            channel.close();
+            channel = null;
+            throw e;
+        }
+    }
+
+    // Loads the newest slot whose checksum holds; the other is the commit before it
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * SLOT_SIZE);
+        readFully(header, 0);
+        boolean found = false;
+        for (int slot = 0; slot < 2; slot++) {
+            header.position(slot * SLOT_SIZE);
+            ByteBuffer fields = header.slice();
+            if (fields.getInt() != MAGIC || fields.getInt() != PAGE_SIZE) continue;
+            long slotGeneration = fields.getLong();
+            int slotRoot = fields.getInt();
+            int slotPageCount = fields.getInt();
+            int slotLivePages = fields.getInt();
+            long slotEntries = fields.getLong();
+            if (fields.getInt() != checksum(header.array(), slot * SLOT_SIZE)) continue;
+            if (found && slotGeneration <= generation) continue;
+            found = true;
+            generation = slotGeneration;
+            root = slotRoot;
+            pageCount = slotPageCount;
+            livePages = slotLivePages;
+            entries = slotEntries;
+        }
+        if (!found) {
+            throw new IOException(file.getName() + " is not a farm store or its header is damaged");
+        }
+    }
+
+    private void writeHeader(long headerGeneration) throws IOException {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        slot.putInt(MAGIC).putInt(PAGE_SIZE).putLong(headerGeneration).putInt(root)
+                .putInt(pageCount).putInt(livePages).putLong(entries);
+        slot.putInt(checksum(slot.array(), 0));
+        slot.clear();
+        writeFully(slot, (headerGeneration % 2) * SLOT_SIZE);
+    }
+
+    private static int checksum(byte[] bytes, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, SLOT_BYTES);
+        return (int) crc.getValue();
+    }
+
+    private Node node(int page) throws IOException {
+        Node node = dirty.get(page);
+        if (node != null) return node;
+        node = cache.get(page);
+        if (node != null) {
+            cacheHits++;
+            return node;
+        }
+        cacheMisses++;
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(buffer, (long) page * PAGE_SIZE);
+        buffer.flip();
+        node = decode(page, buffer);
+        cache.put(page, node);
+        return node;
+    }
+
+    private Node writableRoot() throws IOException {
+        Node node = node(root);
+        if (node.dirty) return node;
+        Node copy = node.copy(allocate(1));
+        dirty.put(copy.page, copy);
+        root = copy.page;
+        return copy;
+    }
+
+    // The child, copied to a new page first unless this commit already did
+    private Node writableChild(Node parent, int index) throws IOException {
+        Node child = node(parent.children.get(index));
+        if (child.dirty) return child;
+        Node copy = child.copy(allocate(1));
+        dirty.put(copy.page, copy);
+        parent.children.set(index, copy.page);
+        return copy;
+    }
+
+    private Node newNode(boolean leaf) {
+        Node node = new Node(leaf, allocate(1));
+        node.dirty = true;
+        dirty.put(node.page, node);
+        livePages++;
+        return node;
+    }
+
+    private int allocate(int pages) {
+        int first = pageCount;
+        pageCount += pages;
+        return first;
+    }
+
+    // Inserts into a writable node; returns the new right sibling if the node had to split
+    private Split insert(Node node, String key, Object value) throws IOException {
+        if (node.leaf) {
+            int index = Collections.binarySearch(node.keys, key);
+            if (index >= 0) {
+                Object old = node.values.get(index);
+                release(old);
+                node.bytes += leafEntrySize(key, value) - leafEntrySize(key, old);
+                node.values.set(index, value);
+            } else {
+                index = -index - 1;
+                node.keys.add(index, key);
+                node.values.add(index, value);
+                node.bytes += leafEntrySize(key, value);
+                entries++;
+            }
+            return node.bytes > PAGE_SIZE ? split(node, index == node.keys.size() - 1) : null;
+        }
+
+        int index = childIndex(node, key);
+        Split split = insert(writableChild(node, index), key, value);
+        if (split == null) return null;
+        node.keys.add(index, split.key);
+        node.children.add(index + 1, split.right.page);
+        node.bytes += branchEntrySize(split.key);
+        return node.bytes > PAGE_SIZE ? split(node, index == node.keys.size() - 1) : null;
+    }
+
+    // Moves the upper part of an overfull node to a new sibling. After an append at the end, as
+    // when keys arrive in order, only the last entry moves, so sequential loads fill their pages.
+    // Otherwise the split point is the one that leaves the larger half smallest: the node is over
+    // by less than one entry, and an entry is at most 1.6 KB, so both halves fit in a page.
+    private Split split(Node node, boolean appended) {
+        Node right = newNode(node.leaf);
+        int size = node.keys.size();
+        int at;
+        if (appended) {
+            at = size - 1;
+        } else {
+            int header = node.leaf ? NODE_HEADER : NODE_HEADER + 4;
+            int before = node.leaf ? leafEntrySize(node.keys.get(0), node.values.get(0)) : branchEntrySize(node.keys.get(0));
+            at = 1;
+            int largest = Integer.MAX_VALUE;
+            for (int i = 1; i < size; i++) {
+                int entry = node.leaf ? leafEntrySize(node.keys.get(i), node.values.get(i)) : branchEntrySize(node.keys.get(i));
+                // A branch's entry at the split point moves up to the parent
+                int larger = Math.max(header + before, node.bytes - before - (node.leaf ? 0 : entry));
+                if (larger < largest) {
+                    largest = larger;
+                    at = i;
+                }
+                before += entry;
+            }
+        }
+
+        String separator;
+        if (node.leaf) {
+            moveTail(node.keys, at, right.keys);
+            moveTail(node.values, at, right.values);
+            separator = right.keys.get(0);
+        } else {
+            // The key at the split point moves up to the parent instead of into either half
+            separator = node.keys.get(at);
+            moveTail(node.keys, at + 1, right.keys);
+            node.keys.remove(at);
+            moveTail(node.children, at + 1, right.children);
+        }
+        node.recomputeBytes();
+        right.recomputeBytes();
+        return new Split(separator, right);
+    }
+
+    private static <T> void moveTail(List<T> from, int start, List<T> to) {
+        List<T> tail = from.subList(start, from.size());
+        to.addAll(tail);
+        tail.clear();
+    }
+
+    private void scan(Node node, String prefix, BiConsumer<String, byte[]> action) throws IOException {
+        if (node.leaf) {
+            int index = Collections.binarySearch(node.keys, prefix);
+            for (int i = index < 0 ? -index - 1 : index; i < node.keys.size() && node.keys.get(i).startsWith(prefix); i++) {
+                action.accept(node.keys.get(i), value(node.values.get(i)));
+            }
+            return;
+        }
+        // Child i holds the keys from keys[i - 1] up to keys[i]; matching keys start in the child
+        // the prefix itself would go to and end before the first separator past them
+        for (int i = childIndex(node, prefix); i < node.children.size(); i++) {
+            if (i > 0) {
+                String low = node.keys.get(i - 1);
+                if (low.compareTo(prefix) > 0 && !low.startsWith(prefix)) break;
+            }
+            scan(node(node.children.get(i)), prefix, action);
+        }
+    }
+
+    // Starts copying the tree as of this commit into a fresh file. Committed pages never change,
+    // so the copy reads them straight from the file, without the lock or the cache.
+    private void startCompaction() {
+        Compaction job = new Compaction(root, channel, new File(file.getPath() + ".compact"));
+        compaction = job;
+        job.thread = new Thread(() -> runCompaction(job), "store-compactor");
+        job.thread.setDaemon(true);
+        job.thread.start();
+    }
+
+    private void runCompaction(Compaction job) {
+        try {
+            Files.deleteIfExists(job.temp.toPath());
+            job.target = new BTreeStore(job.temp, cachePages, false);
+            if (job.root != 0) copyCommitted(job, job.root);
+            // Then the keys put since, a few at a time so commits aren't held up for long
+            while (true) {
+                synchronized (this) {
+                    if (job.cancelled) {
+                        abandonCompaction(job);
+                        return;
+                    }
+                    copyChanged(job, COMPACT_CATCH_UP_KEYS);
+                    if (job.changed.isEmpty()) {
+                        job.copied = true;
+                        // Otherwise the commit of the pending changes swaps the file in
+                        if (dirty.isEmpty() && dirtyOverflow.isEmpty()) finishCompaction(job);
+                        return;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                if (!job.cancelled) System.err.println("Error compacting " + file.getName() + ": " + e.getMessage());
+                abandonCompaction(job);
+            }
+        }
+    }
+
+    private void copyCommitted(Compaction job, int page) throws IOException {
+        if (job.cancelled) return;
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(job.source, buffer, (long) page * PAGE_SIZE);
+        buffer.flip();
+        Node node = decode(page, buffer);
+        if (node.leaf) {
+            for (int i = 0; i < node.keys.size(); i++) {
+                Object stored = node.values.get(i);
+                byte[] value;
+                if (stored instanceof Overflow) {
+                    value = new byte[((Overflow) stored).length];
+                    readFully(job.source, ByteBuffer.wrap(value), (long) ((Overflow) stored).firstPage * PAGE_SIZE);
+                } else {
+                    value = (byte[]) stored;
+                }
+                job.put(node.keys.get(i), value);
+            }
+            return;
+        }
+        for (int child : node.children) {
+            copyCommitted(job, child);
+        }
+    }
+
+    // Copies the current values of up to max keys put since the copy started
+    private void copyChanged(Compaction job, int max) throws IOException {
+        Iterator<String> keys = job.changed.iterator();
+        for (int i = 0; i < max && keys.hasNext(); i++) {
+            String key = keys.next();
+            keys.remove();
+            job.put(key, get(key));
+        }
+    }
+
+    // Swaps the copy in. Called with nothing pending, so only the keys changed since the copy
+    // caught up are left to copy; on failure the current file stays in use.
+    private void finishCompaction(Compaction job) {
+        try {
+            copyChanged(job, Integer.MAX_VALUE);
+            job.target.close();
+
+            channel.close();
+            channel = null;
+            cache.clear();
+            try {
+                try {
+                    Files.move(job.temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(job.temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                AnimalSnapshot.syncDirectory(file.getAbsoluteFile().getParentFile());
+                compactions++;
+            } finally {
+                open(); // The new file, or the old one again if the swap failed
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error compacting " + file.getName() + ": " + e.getMessage());
+        } finally {
+            abandonCompaction(job);
+        }
+    }
+
+    // Closes and deletes the copy, if it is still there, so the next commit may start another
+    private void abandonCompaction(Compaction job) {
+        try {
+            if (job.target != null) job.target.close();
+            Files.deleteIfExists(job.temp.toPath());
+        } catch (IOException e) {
+            System.err.println("Error removing " + job.temp.getName() + ": " + e.getMessage());
+        }
+        if (compaction == job) compaction = null;
+    }
+
+    // A large value gets a run of consecutive pages of its own, written by the next commit
+    private Overflow writeOverflow(byte[] value) {
+        int pages = overflowPages(value.length);
+        Overflow overflow = new Overflow(allocate(pages), value.length);
+        livePages += pages;
+        dirtyOverflow.put(overflow.firstPage, value);
+        return overflow;
+    }
+
+    private void release(Object value) {
+        if (value instanceof Overflow) {
+            Overflow overflow = (Overflow) value;
+            livePages -= overflowPages(overflow.length);
+            dirtyOverflow.remove(overflow.firstPage); // Replaced before it was ever written
+        }
+    }
+
+    private byte[] value(Object stored) throws IOException {
+        if (stored instanceof byte[]) return (byte[]) stored;
+        Overflow overflow = (Overflow) stored;
+        byte[] pending = dirtyOverflow.get(overflow.firstPage);
+        if (pending != null) return pending;
+        byte[] value = new byte[overflow.length];
+        readFully(ByteBuffer.wrap(value), (long) overflow.firstPage * PAGE_SIZE);
+        return value;
+    }
+
+    private static int overflowPages(int length) {
+        return (length + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(channel, buffer, position);
+    }
+
+    private void readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = source.read(buffer, position + buffer.position());
+            if (read < 0) throw new IOException(file.getName() + " is truncated at byte " + (position + buffer.position()));
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    // Number of separator keys <= key, which is the index of the child that holds it
+    private static int childIndex(Node node, String key) {
+        int index = Collections.binarySearch(node.keys, key);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    // Leaf:   type, count, then per entry: key length, key, INLINE + length + bytes or OVERFLOW + first page + length
+    // Branch: type, count, first child, then per entry: key length, key, child
+    private static void encode(Node node, ByteBuffer out) {
+        out.put(node.leaf ? LEAF : BRANCH);
+        out.putShort((short) node.keys.size());
+        if (!node.leaf) out.putInt(node.children.get(0));
+        for (int i = 0; i < node.keys.size(); i++) {
+            byte[] key = node.keys.get(i).getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) key.length).put(key);
+            if (!node.leaf) {
+                out.putInt(node.children.get(i + 1));
+            } else if (node.values.get(i) instanceof Overflow) {
+                Overflow overflow = (Overflow) node.values.get(i);
+                out.put(OVERFLOW).putInt(overflow.firstPage).putInt(overflow.length);
+            } else {
+                byte[] value = (byte[]) node.values.get(i);
+                out.put(INLINE).putShort((short) value.length).put(value);
+            }
+        }
+    }
+
+    private Node decode(int page, ByteBuffer in) throws IOException {
+        try {
+            byte type = in.get();
+            if (type != LEAF && type != BRANCH) {
+                throw new IOException(file.getName() + " page " + page + " is not a tree page");
+            }
+            Node node = new Node(type == LEAF, page);
+            int count = in.getShort() & 0xFFFF;
+            if (!node.leaf) node.children.add(in.getInt());
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[in.getShort() & 0xFFFF];
+                in.get(key);
+                node.keys.add(new String(key, StandardCharsets.UTF_8));
+                if (!node.leaf) {
+                    node.children.add(in.getInt());
+                } else if (in.get() == OVERFLOW) {
+                    node.values.add(new Overflow(in.getInt(), in.getInt()));
+                } else {
+                    byte[] value = new byte[in.getShort() & 0xFFFF];
+                    in.get(value);
+                    node.values.add(value);
+                }
+            }
+            node.bytes = in.position();
+            return node;
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException(file.getName() + " page " + page + " is damaged");
+        }
+    }
+
+    private static int leafEntrySize(String key, Object value) {
+        return 2 + utf8Length(key) + 1 + (value instanceof Overflow ? 8 : 2 + ((byte[]) value).length);
+    }
+
+    private static int branchEntrySize(String key) {
+        return 2 + utf8Length(key) + 4;
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    // One page of the tree, decoded. Committed nodes are never modified: a change works on a copy
+    // with a new page number, which stays dirty until it is written by a commit.
+    private static final class Node {
+        final boolean leaf;
+        final int page;
+        final List<String> keys = new ArrayList<>();
+        final List<Object> values = new ArrayList<>();    // Leaf: byte[] or Overflow per key
+        final List<Integer> children = new ArrayList<>(); // Branch: one more than keys
+        int bytes = NODE_HEADER;                          // Encoded size
+        boolean dirty;
+
+        Node(boolean leaf, int page) {
+            this.leaf = leaf;
+            this.page = page;
+            if (!leaf) bytes += 4;
+        }
+
+        Node copy(int newPage) {
+            Node copy = new Node(leaf, newPage);
+            copy.keys.addAll(keys);
+            copy.values.addAll(values);
+            copy.children.addAll(children);
+            copy.bytes = bytes;
+            copy.dirty = true;
+            return copy;
+        }
+
+        void recomputeBytes() {
+            bytes = NODE_HEADER + (leaf ? 0 : 4);
+            for (int i = 0; i < keys.size(); i++) {
+                bytes += leaf ? leafEntrySize(keys.get(i), values.get(i)) : branchEntrySize(keys.get(i));
+            }
+        }
+    }
+
+    // A copy of the tree into a fresh file, made by the compactor thread
+    private static final class Compaction {
+        final int root;           // The tree being copied, as of the commit that started it
+        final FileChannel source; // Positional reads only, which don't disturb the store's own
+        final File temp;
+        final Set<String> changed = new HashSet<>(); // Put since the copy started, not yet copied again
+        Thread thread;
+        BTreeStore target;
+        volatile boolean cancelled; // Set by close()
+        boolean copied;             // Waiting only for a moment with nothing pending
+
+        Compaction(int root, FileChannel source, File temp) {
+            this.root = root;
+            this.source = source;
+            this.temp = temp;
+        }
+
+        void put(String key, byte[] value) throws IOException {
+            target.put(key, value);
+            if (target.dirty.size() >= COMPACT_COMMIT_PAGES) target.commit();
+        }
+    }
+
+    private static final class Overflow {
+        final int firstPage;
+        final int length;
+
+        Overflow(int firstPage, int length) {
+            this.firstPage = firstPage;
+            this.length = length;
+        }
+    }
+
+    private static final class Split {
+        final String key;
+        final Node right;
+
+        Split(String key, Node right) {
+            this.key = key;
+            this.right = right;
+        }
+    }
+}
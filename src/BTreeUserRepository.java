@@ -0,0 +1,57 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+// Users in a BTreeStore file, users.fdb, each under "u:<name>" in the users.txt line format.
+// A save only rewrites the users whose line changed. An existing users.txt is imported on first
+// use and left as it was.
+class BTreeUserRepository implements UserRepository {
+    static final String STORE_FILE = "users.fdb";
+    private static final String USER = "u:";
+    private static final int CACHE_PAGES = 64; // A user list is a few pages at most
+
+    private final File dataDirectory;
+    private final BTreeStore store;
+
+    BTreeUserRepository(File dataDirectory) throws IOException {
+        this.dataDirectory = dataDirectory;
+        this.store = new BTreeStore(new File(dataDirectory, STORE_FILE), CACHE_PAGES);
+    }
+
+    @Override
+    public void loadAll(Map<String, User> users) throws IOException {
+        if (store.getEntryCount() == 0) {
+            new TextUserRepository(dataDirectory).loadAll(users);
+            saveAll(users.values());
+            return;
+        }
+        store.scan(USER, (key, line) -> {
+            User user = User.fromString(new String(line, StandardCharsets.UTF_8));
+            if (user != null) users.put(user.getUsername(), user);
+        });
+    }
+
+    @Override
+    public User find(String username) throws IOException {
+        byte[] line = store.get(USER + username);
+        return line == null ? null : User.fromString(new String(line, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized void saveAll(Collection<User> users) throws IOException {
+        for (User user : users) {
+            String key = USER + user.getUsername();
+            byte[] line = user.toString().getBytes(StandardCharsets.UTF_8);
+            if (!Arrays.equals(store.get(key), line)) store.put(key, line);
+        }
+        store.commit();
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
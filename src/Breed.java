@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// A breed from the herd-wide registry. There is one Breed instance per distinct name, so
+// breeds compare by identity or by code, and animals share it instead of holding a name each.
+final class Breed {
+    private static final InternTable NAMES = new InternTable();
+    private static volatile Breed[] registry = new Breed[16];
+
+    private final int code;
+    private final String name;
+
+    private Breed(int code, String name) {
+        this.code = code;
+        this.name = name;
+    }
+
+    public static Breed of(String name) {
+        int code = NAMES.code(name);
+        Breed[] current = registry;
+        if (code < current.length && current[code] != null) return current[code];
+        return register(code);
+    }
+
+    public static Breed byCode(int code) {
+        return registry[code];
+    }
+
+    // Every breed registered so far, in code order
+    public static List<Breed> all() {
+        Breed[] current = registry;
+        List<Breed> breeds = new ArrayList<>();
+        for (Breed breed : current) {
+            if (breed != null) breeds.add(breed);
+        }
+        return Collections.unmodifiableList(breeds);
+    }
+
+    public int getCode() { return code; }
+    public String getName() { return name; }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static synchronized Breed register(int code) {
+        Breed[] current = registry;
+        if (code >= current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length * 2, code + 1));
+        }
+        if (current[code] == null) {
+            current[code] = new Breed(code, NAMES.value(code));
+            registry = current;
+        }
+        return current[code];
+    }
+}
@@ -0,0 +1,241 @@
+import javax.management.*;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+// Named counters, timers and gauges of the hot paths, shared by the process. Counters are
+// LongAdders and timers LatencyHistograms in nanoseconds; callers look them up once and keep
+// them in fields. The registry is published over JMX as farm:type=Metrics (one attribute per
+// counter and gauge, count/mean/p50/p99/max in milliseconds per timer) and, when asked for with
+// -Dfarm.metrics.csvSeconds=N, appended to FarmRecords_v2.metrics.csv in the data directory every
+// N seconds (off by default, since the GUI's data directory is wherever it was started).
+//
+// -Dfarm.metrics=false turns it all off: ENABLED is a constant, so start() and stop() fold away
+// in the compiled callers and nothing is registered or written.
+class FarmMetrics {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("farm.metrics", "true"));
+    static final String CSV_FILE = "FarmRecords_v2.metrics.csv";
+    private static final long CSV_SECONDS = Long.getLong("farm.metrics.csvSeconds", 0);
+    private static final long CSV_MAX_BYTES = 8L * 1024 * 1024; // Then the file is moved to .old and restarted
+    private static final String OBJECT_NAME = "farm:type=Metrics";
+    private static final String[] TIMER_FIELDS = {"count", "meanMillis", "p50Millis", "p99Millis", "maxMillis"};
+
+    private static final FarmMetrics DEFAULT = new FarmMetrics();
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+    private ScheduledExecutorService dumper; // Guarded by this; started by the first dumpTo()
+
+    static FarmMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    private FarmMetrics() {
+        if (ENABLED) registerMBean();
+    }
+
+    // Start of a timed section, 0 when disabled
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Records the time since start() in the timer
+    static void stop(LatencyHistogram timer, long start) {
+        if (ENABLED) timer.record(System.nanoTime() - start);
+    }
+
+    LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    // Publishes a histogram something else already records into, e.g. the persistence writer's
+    void timer(String name, LatencyHistogram histogram) {
+        if (ENABLED) timers.put(name, histogram);
+    }
+
+    // A value read when the metrics are; registering a name again replaces the gauge
+    void gauge(String name, DoubleSupplier value) {
+        if (ENABLED) gauges.put(name, value);
+    }
+
+    // Unregisters a gauge or a published timer whose owner is going away, unless the name has
+    // been registered to something else since
+    void remove(String name, DoubleSupplier gauge) {
+        gauges.remove(name, gauge);
+    }
+
+    void remove(String name, LatencyHistogram timer) {
+        timers.remove(name, timer);
+    }
+
+    // Timer or null
+    LatencyHistogram findTimer(String name) {
+        return timers.get(name);
+    }
+
+    double readGauge(String name) {
+        DoubleSupplier gauge = gauges.get(name);
+        return gauge == null ? Double.NaN : gauge.getAsDouble();
+    }
+
+    // Appends the metrics to the CSV file in the directory periodically, from a daemon thread.
+    // Only the first directory given is used.
+    synchronized void dumpTo(File directory) {
+        if (!ENABLED || CSV_SECONDS <= 0 || dumper != null) return;
+        File file = new File(directory, CSV_FILE);
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                appendCsv(file);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error writing " + file.getName() + ": " + e.getMessage());
+            }
+        }, CSV_SECONDS, CSV_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // One row per metric: time,name,type,count,mean_ms,p50_ms,p99_ms,max_ms,value
+    void appendCsv(File file) throws IOException {
+        if (file.length() > CSV_MAX_BYTES) {
+            File old = new File(file.getPath() + ".old");
+            old.delete();
+            file.renameTo(old);
+        }
+        boolean header = !file.exists() || file.length() == 0;
+        String time = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).toString();
+        try (Writer out = new FileWriter(file, true)) {
+            if (header) out.write("time,name,type,count,mean_ms,p50_ms,p99_ms,max_ms,value\n");
+            for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+                out.write(time + "," + counter.getKey() + ",counter," + counter.getValue().sum() + ",,,,,\n");
+            }
+            for (Map.Entry<String, LatencyHistogram> timer : timers.entrySet()) {
+                LatencyHistogram histogram = timer.getValue();
+                out.write(time + "," + timer.getKey() + ",timer," + histogram.getCount()
+                        + "," + millis(histogram.getMean()) + "," + millis(histogram.getValueAtPercentile(50))
+                        + "," + millis(histogram.getValueAtPercentile(99)) + "," + millis(histogram.getMax()) + ",\n");
+            }
+            for (Map.Entry<String, DoubleSupplier> gauge : gauges.entrySet()) {
+                out.write(time + "," + gauge.getKey() + ",gauge,,,,,," + gauge.getValue().getAsDouble() + "\n");
+            }
+        }
+    }
+
+    // "rfid.scan p50=0.004ms p99=0.050ms ... (n=120)", one line per timer, then counters and gauges
+    String summary() {
+        StringBuilder out = new StringBuilder();
+        timers.forEach((name, histogram) -> out.append(name).append(' ').append(histogram.summary()).append('\n'));
+        counters.forEach((name, counter) -> out.append(name).append(' ').append(counter.sum()).append('\n'));
+        gauges.forEach((name, gauge) -> out.append(name).append(' ').append(gauge.getAsDouble()).append('\n'));
+        return out.toString();
+    }
+
+    static double millis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(new MetricsMBean(), name);
+        } catch (JMException | SecurityException e) {
+            System.err.println("Metrics not published over JMX: " + e.getMessage());
+        }
+    }
+
+    // Attributes are read live from the registry, so metrics added later show up too
+    private class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongAdder counter = counters.get(attribute);
+            if (counter != null) return counter.sum();
+            DoubleSupplier gauge = gauges.get(attribute);
+            if (gauge != null) return gauge.getAsDouble();
+            int dot = attribute.lastIndexOf('.');
+            LatencyHistogram timer = dot < 0 ? null : timers.get(attribute.substring(0, dot));
+            if (timer != null) {
+                switch (attribute.substring(dot + 1)) {
+                    case "count": return timer.getCount();
+                    case "meanMillis": return millis(timer.getMean());
+                    case "p50Millis": return millis(timer.getValueAtPercentile(50));
+                    case "p99Millis": return millis(timer.getValueAtPercentile(99));
+                    case "maxMillis": return millis(timer.getMax());
+                    default: break;
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList values = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    values.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Left out, as the interface expects
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            if (action.equals("resetTimers") && (params == null || params.length == 0)) {
+                timers.values().forEach(LatencyHistogram::reset);
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : counters.keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", "Counter", true, false, false));
+            }
+            for (String name : timers.keySet()) {
+                for (String field : TIMER_FIELDS) {
+                    String type = field.equals("count") ? "long" : "double";
+                    attributes.add(new MBeanAttributeInfo(name + "." + field, type, "Timer", true, false, false));
+                }
+            }
+            for (String name : gauges.keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "double", "Gauge", true, false, false));
+            }
+            MBeanOperationInfo reset = new MBeanOperationInfo("resetTimers", "Clears every timer",
+                    new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+            return new MBeanInfo(FarmMetrics.class.getName(), "Livestock management hot-path metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{reset}, null);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Headless bulk import and export of farm records, as CSV or the .fdf text format,
+// ingestion of walk-over scale feeds, and lookup of a single animal.
+//
+//   java FarmRecordsCli import <file.csv|file.fdf>
+//   java FarmRecordsCli export <file.csv|file.fdf>
+//   java FarmRecordsCli weights <feed.csv>     one "<rfid>,<weight>,<timestamp>" per line
+//   java FarmRecordsCli lookup <id|rfid>       with -Dfarm.storage=btree, reads only that animal
+//
+// Imports are parsed in parallel chunks, checked against existing IDs and RFID tags, and
+// committed as one batch. Runs against the records in the working directory, like the GUI.
+public class FarmRecordsCli {
+    private static final int CHUNK_SIZE = 10_000;
+    private static final String CSV_HEADER = "id,breed,age,weight,rfid,health,feeding,updated";
+
+    public static void main(String[] args) {
+        if (args.length != 2 || !(args[0].equals("import") || args[0].equals("export") || args[0].equals("weights")
+                || args[0].equals("lookup"))) {
+            System.err.println("Usage: java FarmRecordsCli import|export <file.csv|file.fdf>");
+            System.err.println("       java FarmRecordsCli weights <feed.csv>");
+            System.err.println("       java FarmRecordsCli lookup <id|rfid>");
+            System.exit(2);
+        }
+        if (args[0].equals("lookup")) {
+            System.exit(lookup(args[1]));
+        }
+
+        File file = new File(args[1]);
+        boolean csv = file.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+        LivestockManagement system = new LivestockManagement();
+        for (String error : system.getLoadErrors()) {
+            System.err.println(error);
+        }
+
+        try {
+            if (args[0].equals("import")) {
+                importRecords(system, file, csv);
+            } else if (args[0].equals("export")) {
+                exportRecords(system, file, csv);
+            } else {
+                ingestWeights(system, file);
+            }
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            system.close();
+        }
+    }
+
+    private static void importRecords(LivestockManagement system, File file, boolean csv) throws IOException {
+        long start = System.nanoTime();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        int firstRow = csv && !lines.isEmpty() && lines.get(0).trim().equalsIgnoreCase(CSV_HEADER) ? 1 : 0;
+
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = firstRow; i < lines.size(); i += CHUNK_SIZE) {
+            chunks.add(lines.subList(i, Math.min(lines.size(), i + CHUNK_SIZE)));
+        }
+
+        // Chunks parse independently; the ordered collect keeps file order for duplicate resolution
+        List<ParsedChunk> parsed = chunks.parallelStream()
+                .map(chunk -> parseChunk(chunk, csv))
+                .collect(Collectors.toList());
+        long parsedAt = System.nanoTime();
+
+        List<Animal> animals = new ArrayList<>();
+        List<String> malformed = new ArrayList<>();
+        for (int i = 0; i < parsed.size(); i++) {
+            animals.addAll(parsed.get(i).animals);
+            for (Map.Entry<Integer, String> error : parsed.get(i).errors.entrySet()) {
+                malformed.add("Line " + (firstRow + i * CHUNK_SIZE + error.getKey() + 1) + ": " + error.getValue());
+            }
+        }
+
+        List<MutationResult> rejected = system.registerAnimals(animals);
+        system.close(); // Waits for the batch to reach disk
+        long end = System.nanoTime();
+
+        int rows = lines.size() - firstRow;
+        System.out.println("Rows read:      " + rows);
+        System.out.println("Malformed:      " + malformed.size());
+        System.out.println("Duplicates:     " + rejected.size());
+        System.out.println("Imported:       " + (animals.size() - rejected.size()));
+        System.out.printf("Parse:          %.0f rows/sec%n", rate(rows, parsedAt - start));
+        System.out.printf("Total:          %.0f rows/sec (%.2f s)%n", rate(rows, end - start), (end - start) / 1e9);
+        printSample("Malformed", malformed);
+        printSample("Duplicate", rejected.stream().map(MutationResult::getMessage).collect(Collectors.toList()));
+    }
+
+    private static void exportRecords(LivestockManagement system, File file, boolean csv) throws IOException {
+        long start = System.nanoTime();
+        List<String> ids = system.getSortedAnimalIds();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            if (csv) {
+                writer.write(CSV_HEADER + "\n");
+            }
+            for (String id : ids) {
+                Animal animal = system.getAnimalById(id);
+                if (animal != null) {
+                    writer.write(csv ? toCsv(animal) : animal.toRecord());
+                    writer.write("\n");
+                }
+            }
+        }
+        long end = System.nanoTime();
+
+        System.out.println("Exported:       " + ids.size());
+        System.out.printf("Total:          %.0f rows/sec (%.2f s)%n", rate(ids.size(), end - start), (end - start) / 1e9);
+    }
+
+    private static void ingestWeights(LivestockManagement system, File file) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ScaleFeedIngestor ingestor = new ScaleFeedIngestor(system);
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            ingestor.ingest(in);
+        } finally {
+            ingestor.close();
+        }
+        system.close(); // Waits for the batches to reach disk
+        long end = System.nanoTime();
+
+        System.out.println("Readings:       " + ingestor.getAcceptedCount());
+        System.out.println("Malformed:      " + ingestor.getMalformedCount());
+        System.out.println("Unknown tags:   " + ingestor.getUnknownTagCount());
+        System.out.println("Stale:          " + ingestor.getStaleCount());
+        System.out.println("Applied:        " + ingestor.getAppliedCount() + " in " + ingestor.getBatchCount() + " batches");
+        System.out.printf("Total:          %.0f readings/sec (%.2f s)%n",
+                rate((int) ingestor.getAcceptedCount(), end - start), (end - start) / 1e9);
+    }
+
+    // Reads one animal by ID or RFID tag straight from the repository, without starting
+    // LivestockManagement; the snapshot repository still has to load the whole herd for it
+    private static int lookup(String key) {
+        List<String> problems = new ArrayList<>();
+        try (AnimalRepository repository = AnimalRepository.open(new File("."), new HashMap<>(), System.err::println, problems)) {
+            problems.forEach(System.err::println);
+            Animal animal = repository.findById(key);
+            if (animal == null) animal = repository.findByRfid(key);
+            if (animal == null) {
+                System.err.println("No animal with ID or RFID tag " + key);
+                return 1;
+            }
+            System.out.println(animal.toRecord());
+            return 0;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // Animals parsed from one chunk, with errors keyed by line offset within the chunk
+    private static class ParsedChunk {
+        final List<Animal> animals = new ArrayList<>();
+        final Map<Integer, String> errors = new TreeMap<>();
+    }
+
+    private static ParsedChunk parseChunk(List<String> lines, boolean csv) {
+        ParsedChunk chunk = new ParsedChunk();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.trim().isEmpty()) continue;
+            try {
+                Animal animal = csv ? fromCsv(line) : Animal.parse(line);
+                if (animal == null) {
+                    chunk.errors.put(i, "incomplete record");
+                } else {
+                    chunk.animals.add(animal);
+                }
+            } catch (RuntimeException e) {
+                chunk.errors.put(i, e.toString());
+            }
+        }
+        return chunk;
+    }
+
+    static Animal fromCsv(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() < 5) return null;
+
+        return new Animal(fields.get(0), fields.get(1), Integer.parseInt(fields.get(2).trim()),
+                Double.parseDouble(fields.get(3).trim()), fields.get(4),
+                field(fields, 5, Animal.DEFAULT_HEALTH_STATUS),
+                field(fields, 6, Animal.DEFAULT_FEEDING_DATA),
+                fields.size() > 7 && !fields.get(7).isEmpty() ? LocalDate.parse(fields.get(7).trim()) : LocalDate.now());
+    }
+
+    static String toCsv(Animal animal) {
+        Animal.State state = animal.getState();
+        return quote(animal.getId()) + "," + quote(animal.getBreed()) + "," + animal.getAge() + ","
+                + state.weight + "," + quote(animal.getRFIDTag()) + "," + quote(state.healthStatus()) + ","
+                + quote(state.feedingData()) + "," + state.lastUpdated();
+    }
+
+    private static String field(List<String> fields, int index, String fallback) {
+        return fields.size() > index && !fields.get(index).isEmpty() ? fields.get(index) : fallback;
+    }
+
+    // RFC 4180 style: fields may be quoted, with "" standing for a quote inside a quoted field
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static double rate(int rows, long nanos) {
+        return nanos == 0 ? rows : rows / (nanos / 1e9);
+    }
+
+    private static void printSample(String label, List<String> messages) {
+        for (int i = 0; i < Math.min(10, messages.size()); i++) {
+            System.out.println(label + ": " + messages.get(i));
+        }
+        if (messages.size() > 10) {
+            System.out.println("... and " + (messages.size() - 10) + " more");
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Struct-of-arrays copy of the herd's analytic fields: one primitive column per field and a row
+// per animal in registration order, with an id -> row index. Aggregations walk the columns
+// front to back instead of chasing Animal and State objects around the heap, so they stream
+// through cache lines and the JIT can unroll (and for int columns, vectorize) the loops.
+// Kept current by LivestockManagement; scans share a read lock, adds and updates take the write lock.
+class HerdColumns {
+    private static final int MAX_COUNTED_AGE = 255; // Years; see ageDistribution
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> rows = new HashMap<>();
+    private int[] breedCodes = new int[1024];
+    private int[] healthCodes = new int[1024];
+    private int[] ages = new int[1024];
+    private double[] weights = new double[1024];
+    private int[] updatedDays = new int[1024]; // Epoch day
+    private int size;
+
+    public void add(Animal animal) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rows.get(animal.getId());
+            if (row == null) {
+                if (size == ages.length) grow();
+                row = size++;
+                rows.put(animal.getId(), row);
+                breedCodes[row] = animal.getBreedType().getCode();
+                ages[row] = animal.getAge();
+            }
+            write(row, animal.getState());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Re-reads the mutable fields of an animal already in the store
+    public void update(Animal animal) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rows.get(animal.getId());
+            if (row != null) write(row, animal.getState());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            rows.clear();
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // True if the animal has a row, i.e. is registered
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return rows.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public double averageWeight() {
+        lock.readLock().lock();
+        try {
+            if (size == 0) return 0;
+            // Four independent sums let the adds overlap instead of waiting on each other
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            for (; i + 3 < size; i += 4) {
+                s0 += weights[i];
+                s1 += weights[i + 1];
+                s2 += weights[i + 2];
+                s3 += weights[i + 3];
+            }
+            for (; i < size; i++) s0 += weights[i];
+            return (s0 + s1 + s2 + s3) / size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Average weight per breed, by breed name
+    public Map<String, Double> averageWeightByBreed() {
+        lock.readLock().lock();
+        try {
+            int breeds = maxCode(breedCodes) + 1;
+            double[] sums = new double[breeds];
+            int[] counts = new int[breeds];
+            for (int i = 0; i < size; i++) {
+                sums[breedCodes[i]] += weights[i];
+                counts[breedCodes[i]]++;
+            }
+
+            Map<String, Double> averages = new TreeMap<>();
+            for (int code = 0; code < breeds; code++) {
+                if (counts[code] > 0) averages.put(Breed.byCode(code).getName(), sums[code] / counts[code]);
+            }
+            return averages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Number of animals per health status, by status
+    public Map<String, Long> countByHealth() {
+        lock.readLock().lock();
+        try {
+            long[] counts = new long[maxCode(healthCodes) + 1];
+            for (int i = 0; i < size; i++) {
+                counts[healthCodes[i]]++;
+            }
+
+            Map<String, Long> byStatus = new TreeMap<>();
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] > 0) byStatus.put(Animal.HEALTH_STATUSES.value(code), counts[code]);
+            }
+            return byStatus;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Number of animals of each age in years, youngest first. Ages are counted in an array up to
+    // MAX_COUNTED_AGE; the rare animal recorded older than that (a typo, say) is counted in the
+    // map directly, so one bad age can't size the array. Negative ages count as 0.
+    public Map<Integer, Long> ageDistribution() {
+        lock.readLock().lock();
+        try {
+            long[] counts = new long[Math.min(maxCode(ages), MAX_COUNTED_AGE) + 1];
+            Map<Integer, Long> byAge = new TreeMap<>();
+            for (int i = 0; i < size; i++) {
+                int age = Math.max(0, ages[i]);
+                if (age < counts.length) {
+                    counts[age]++;
+                } else {
+                    byAge.merge(age, 1L, Long::sum);
+                }
+            }
+
+            for (int age = 0; age < counts.length; age++) {
+                if (counts[age] > 0) byAge.put(age, counts[age]);
+            }
+            return byAge;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int countUpdatedSince(LocalDate date) {
+        lock.readLock().lock();
+        try {
+            int day = (int) date.toEpochDay();
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                count += updatedDays[i] >= day ? 1 : 0; // Branch-free, so the loop can vectorize
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Group-by, weight and recency statistics in one pass, split across the common fork-join pool
+    public HerdStatistics statistics(LocalDate since) {
+        return statistics(since, ForkJoinPool.commonPool());
+    }
+
+    // The columns are copied under the read lock and scanned after releasing it, so a long scan
+    // on a busy pool never holds up registrations and updates waiting for the write lock
+    public HerdStatistics statistics(LocalDate since, ForkJoinPool pool) {
+        int[] breeds, health, ageColumn, days;
+        double[] weightColumn;
+        int breedCount, healthCount;
+        lock.readLock().lock();
+        try {
+            breeds = Arrays.copyOf(breedCodes, size);
+            health = Arrays.copyOf(healthCodes, size);
+            ageColumn = Arrays.copyOf(ages, size);
+            weightColumn = Arrays.copyOf(weights, size);
+            days = Arrays.copyOf(updatedDays, size);
+            breedCount = maxCode(breedCodes) + 1;
+            healthCount = maxCode(healthCodes) + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return HerdStatistics.compute(breeds, health, ageColumn, weightColumn, days, breeds.length,
+                breedCount, healthCount, since, pool);
+    }
+
+    private void write(int row, Animal.State state) {
+        healthCodes[row] = state.healthCode;
+        weights[row] = state.weight;
+        updatedDays[row] = state.lastUpdatedDay;
+    }
+
+    private int maxCode(int[] column) {
+        int max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, column[i]);
+        }
+        return max;
+    }
+
+    private void grow() {
+        int capacity = size * 2;
+        breedCodes = Arrays.copyOf(breedCodes, capacity);
+        healthCodes = Arrays.copyOf(healthCodes, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+        updatedDays = Arrays.copyOf(updatedDays, capacity);
+    }
+}
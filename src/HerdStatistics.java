@@ -0,0 +1,242 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Herd statistics computed in one parallel pass over the HerdColumns arrays: head count and
+// weight min/max/mean per breed, health status and age bucket, weight percentiles across the
+// herd, and how many animals were updated since a date. The rows are split into chunks on a
+// fork-join pool; each chunk fills its own accumulator with no shared writes, and the
+// accumulators are merged as the tasks join, so the work scales with the cores available.
+class HerdStatistics {
+    private static final int MIN_CHUNK = 16_384;    // Rows below which forking costs more than it saves
+    private static final double WEIGHT_STEP = 0.1;  // Percentile resolution in kg
+    private static final double BUCKETS_PER_KG = 1 / WEIGHT_STEP;
+    private static final int WEIGHT_BUCKETS = 20_001; // Up to 2000 kg; anything heavier lands in the last bucket
+
+    // Head count and weights of one group of animals
+    static final class Group {
+        final long count;
+        final double minWeight;
+        final double maxWeight;
+        final double meanWeight;
+
+        Group(long count, double minWeight, double maxWeight, double meanWeight) {
+            this.count = count;
+            this.minWeight = minWeight;
+            this.maxWeight = maxWeight;
+            this.meanWeight = meanWeight;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d head, %.1f-%.1f kg, mean %.1f kg", count, minWeight, maxWeight, meanWeight);
+        }
+    }
+
+    private final LocalDate since;
+    private final Accumulator totals;
+    private final Map<String, Group> byBreed = new TreeMap<>();
+    private final Map<String, Group> byHealth = new TreeMap<>();
+    private final Map<String, Group> byAgeBucket = new LinkedHashMap<>();
+
+    private HerdStatistics(LocalDate since, Accumulator totals) {
+        this.since = since;
+        this.totals = totals;
+        for (int code = 0; code < totals.breeds.count.length; code++) {
+            Group group = totals.breeds.group(code);
+            if (group != null) byBreed.put(Breed.byCode(code).getName(), group);
+        }
+        for (int code = 0; code < totals.health.count.length; code++) {
+            Group group = totals.health.group(code);
+            if (group != null) byHealth.put(Animal.HEALTH_STATUSES.value(code), group);
+        }
+        for (int bucket = 0; bucket < totals.ageBuckets.count.length; bucket++) {
+            Group group = totals.ageBuckets.group(bucket);
+            if (group != null) byAgeBucket.put(HerdSummary.AGE_BUCKETS[bucket], group);
+        }
+    }
+
+    // Called by HerdColumns with a copy of its columns that nothing else changes
+    static HerdStatistics compute(int[] breedCodes, int[] healthCodes, int[] ages, double[] weights,
+                                  int[] updatedDays, int size, int breedCount, int healthCount,
+                                  LocalDate since, ForkJoinPool pool) {
+        Scan scan = new Scan(breedCodes, healthCodes, ages, weights, updatedDays, breedCount, healthCount,
+                (int) since.toEpochDay(), 0, size, Math.max(MIN_CHUNK, size / (pool.getParallelism() * 4) + 1));
+        return new HerdStatistics(since, pool.invoke(scan));
+    }
+
+    public long getCount() { return totals.all.count[0]; }
+    public double getMinWeight() { return getCount() == 0 ? 0 : totals.all.min[0]; }
+    public double getMaxWeight() { return getCount() == 0 ? 0 : totals.all.max[0]; }
+    public double getMeanWeight() { return getCount() == 0 ? 0 : totals.all.sum[0] / getCount(); }
+
+    public LocalDate getSince() { return since; }
+    public long getUpdatedSinceCount() { return totals.updatedSince; }
+
+    public Map<String, Group> getByBreed() { return Collections.unmodifiableMap(byBreed); }
+    public Map<String, Group> getByHealth() { return Collections.unmodifiableMap(byHealth); }
+
+    // Groups per age bucket, youngest first
+    public Map<String, Group> getByAgeBucket() { return Collections.unmodifiableMap(byAgeBucket); }
+
+    // Weight at the given percentile (0-100), to within 0.1 kg
+    public double getWeightPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        long[] histogram = totals.weightHistogram;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank) {
+                double weight = bucket * WEIGHT_STEP;
+                return Math.min(getMaxWeight(), Math.max(getMinWeight(), weight));
+            }
+        }
+        return getMaxWeight();
+    }
+
+    public String summary() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d animals, weight %.1f-%.1f kg, mean %.1f kg, p50 %.1f kg, p90 %.1f kg, p99 %.1f kg%n",
+                getCount(), getMinWeight(), getMaxWeight(), getMeanWeight(),
+                getWeightPercentile(50), getWeightPercentile(90), getWeightPercentile(99)));
+        out.append("Updated since ").append(since).append(": ").append(getUpdatedSinceCount()).append("\n");
+        appendGroups(out, "By breed:", byBreed);
+        appendGroups(out, "By health status:", byHealth);
+        appendGroups(out, "By age:", byAgeBucket);
+        return out.toString();
+    }
+
+    private static void appendGroups(StringBuilder out, String title, Map<String, Group> groups) {
+        out.append(title).append("\n");
+        for (Map.Entry<String, Group> entry : groups.entrySet()) {
+            out.append("- ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+    }
+
+    // Count and weight totals per code of one grouping
+    private static final class Groups {
+        final long[] count;
+        final double[] sum;
+        final double[] min;
+        final double[] max;
+
+        Groups(int size) {
+            count = new long[size];
+            sum = new double[size];
+            min = new double[size];
+            max = new double[size];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        void add(int code, double weight) {
+            count[code]++;
+            sum[code] += weight;
+            if (weight < min[code]) min[code] = weight;
+            if (weight > max[code]) max[code] = weight;
+        }
+
+        void merge(Groups other) {
+            for (int code = 0; code < count.length; code++) {
+                count[code] += other.count[code];
+                sum[code] += other.sum[code];
+                min[code] = Math.min(min[code], other.min[code]);
+                max[code] = Math.max(max[code], other.max[code]);
+            }
+        }
+
+        Group group(int code) {
+            if (count[code] == 0) return null;
+            return new Group(count[code], min[code], max[code], sum[code] / count[code]);
+        }
+    }
+
+    // Everything one chunk of rows contributes; private to the task that fills it until merged
+    private static final class Accumulator {
+        final Groups all = new Groups(1);
+        final Groups breeds;
+        final Groups health;
+        final Groups ageBuckets = new Groups(HerdSummary.AGE_BUCKETS.length);
+        final long[] weightHistogram = new long[WEIGHT_BUCKETS];
+        long updatedSince;
+
+        Accumulator(int breedCount, int healthCount) {
+            breeds = new Groups(breedCount);
+            health = new Groups(healthCount);
+        }
+
+        void merge(Accumulator other) {
+            all.merge(other.all);
+            breeds.merge(other.breeds);
+            health.merge(other.health);
+            ageBuckets.merge(other.ageBuckets);
+            for (int bucket = 0; bucket < weightHistogram.length; bucket++) {
+                weightHistogram[bucket] += other.weightHistogram[bucket];
+            }
+            updatedSince += other.updatedSince;
+        }
+    }
+
+    // Splits its rows in half until they fit one chunk, then scans them into a fresh accumulator
+    private static final class Scan extends RecursiveTask<Accumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] breedCodes, healthCodes, ages, updatedDays;
+        private final double[] weights;
+        private final int breedCount, healthCount, sinceDay;
+        private final int from, to, chunk;
+
+        Scan(int[] breedCodes, int[] healthCodes, int[] ages, double[] weights, int[] updatedDays,
+             int breedCount, int healthCount, int sinceDay, int from, int to, int chunk) {
+            this.breedCodes = breedCodes;
+            this.healthCodes = healthCodes;
+            this.ages = ages;
+            this.weights = weights;
+            this.updatedDays = updatedDays;
+            this.breedCount = breedCount;
+            this.healthCount = healthCount;
+            this.sinceDay = sinceDay;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            if (to - from <= chunk) return scan();
+
+            int middle = (from + to) >>> 1;
+            Scan left = split(from, middle);
+            Scan right = split(middle, to);
+            left.fork();
+            Accumulator result = right.compute();
+            result.merge(left.join());
+            return result;
+        }
+
+        private Scan split(int start, int end) {
+            return new Scan(breedCodes, healthCodes, ages, weights, updatedDays,
+                    breedCount, healthCount, sinceDay, start, end, chunk);
+        }
+
+        private Accumulator scan() {
+            Accumulator acc = new Accumulator(breedCount, healthCount);
+            long updated = 0;
+            for (int row = from; row < to; row++) {
+                double weight = weights[row];
+                acc.all.add(0, weight);
+                acc.breeds.add(breedCodes[row], weight);
+                acc.health.add(healthCodes[row], weight);
+                acc.ageBuckets.add(HerdSummary.ageBucketIndex(ages[row]), weight);
+                int bucket = (int) Math.round(weight * BUCKETS_PER_KG);
+                acc.weightHistogram[Math.max(0, Math.min(WEIGHT_BUCKETS - 1, bucket))]++;
+                updated += updatedDays[row] >= sinceDay ? 1 : 0;
+            }
+            acc.updatedSince = updated;
+            return acc;
+        }
+    }
+}
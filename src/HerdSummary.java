@@ -0,0 +1,117 @@
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.concurrent.atomic.LongAdder;
+
+// Herd-wide counters by health status, breed and age bucket, kept current on every change
+// so the headline of the farm summary never has to walk the herd. Health statuses and
+// breeds are counted by their interned codes, so an update is an array index, not a map lookup.
+class HerdSummary {
+    private static final int[] AGE_BUCKET_LIMITS = {1, 3, 6, 10};
+    static final String[] AGE_BUCKETS = {"Under 1", "1-2", "3-5", "6-9", "10+"};
+
+    private final LongAdder total = new LongAdder();
+    private final CodeCounts byHealth = new CodeCounts();
+    private final CodeCounts byBreed = new CodeCounts();
+    private final LongAdder[] byAgeBucket = new LongAdder[AGE_BUCKETS.length];
+
+    public HerdSummary() {
+        for (int i = 0; i < byAgeBucket.length; i++) byAgeBucket[i] = new LongAdder();
+    }
+
+    public void animalAdded(Animal animal) {
+        total.increment();
+        byHealth.add(animal.getHealthCode(), 1);
+        byBreed.add(animal.getBreedType().getCode(), 1);
+        byAgeBucket[ageBucketIndex(animal.getAge())].increment();
+    }
+
+    // Moves one animal between health status codes
+    public void healthChanged(int oldStatus, int newStatus) {
+        if (oldStatus == newStatus) return;
+        byHealth.add(oldStatus, -1);
+        byHealth.add(newStatus, 1);
+    }
+
+    public void clear() {
+        total.reset();
+        byHealth.clear();
+        byBreed.clear();
+        for (LongAdder count : byAgeBucket) count.reset();
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public Map<String, Long> getHealthCounts() {
+        return byHealth.snapshot(Animal.HEALTH_STATUSES::value);
+    }
+
+    public Map<String, Long> getBreedCounts() {
+        return byBreed.snapshot(code -> Breed.byCode(code).getName());
+    }
+
+    // Counts per age bucket, youngest first
+    public Map<String, Long> getAgeBucketCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < AGE_BUCKETS.length; i++) {
+            long count = byAgeBucket[i].sum();
+            if (count > 0) {
+                counts.put(AGE_BUCKETS[i], count);
+            }
+        }
+        return counts;
+    }
+
+    static String ageBucket(int age) {
+        return AGE_BUCKETS[ageBucketIndex(age)];
+    }
+
+    static int ageBucketIndex(int age) {
+        for (int i = 0; i < AGE_BUCKET_LIMITS.length; i++) {
+            if (age < AGE_BUCKET_LIMITS[i]) return i;
+        }
+        return AGE_BUCKETS.length - 1;
+    }
+
+    // Counters indexed by interned code, grown as new codes appear
+    private static class CodeCounts {
+        private volatile LongAdder[] counts = new LongAdder[0];
+
+        void add(int code, long delta) {
+            LongAdder[] current = counts;
+            LongAdder count = code < current.length ? current[code] : null;
+            if (count == null) count = create(code);
+            count.add(delta);
+        }
+
+        synchronized void clear() {
+            counts = new LongAdder[0];
+        }
+
+        // Sorted by name, without the values that have dropped to zero
+        Map<String, Long> snapshot(IntFunction<String> names) {
+            LongAdder[] current = counts;
+            Map<String, Long> copy = new TreeMap<>();
+            for (int code = 0; code < current.length; code++) {
+                long count = current[code] == null ? 0 : current[code].sum();
+                if (count > 0) {
+                    copy.put(names.apply(code), count);
+                }
+            }
+            return copy;
+        }
+
+        private synchronized LongAdder create(int code) {
+            LongAdder[] current = counts;
+            if (code >= current.length) {
+                current = Arrays.copyOf(current, Math.max(code + 1, current.length * 2));
+            }
+            if (current[code] == null) {
+                current[code] = new LongAdder();
+                counts = current;
+            }
+            return current[code];
+        }
+    }
+}
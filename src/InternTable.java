@@ -0,0 +1,46 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Assigns small int codes to distinct strings and keeps one shared copy of each.
+// Animals store the code instead of their own copy of a value that thousands of them share,
+// and filters and group-bys compare codes. Codes are never reused, so they stay valid for the
+// life of the process; lookups by code are a plain array read.
+class InternTable {
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private int size; // Guarded by this; readers only see codes already published through values
+
+    public int code(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    // Code of a value that is already interned, or -1
+    public int find(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+
+    public String value(int code) {
+        return values[code];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int add(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) return existing;
+
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = value;
+        values = current; // Publish the value before its code becomes visible
+        codes.put(value, size);
+        return size++;
+    }
+}
@@ -0,0 +1,32 @@
+// Outcome of a change requested through LivestockManagement, for the caller to report
+class MutationResult {
+    enum Status { SUCCESS, DUPLICATE_ID, DUPLICATE_RFID, NOT_FOUND, STALE }
+
+    private final Status status;
+    private final String message;
+    private final Animal animal;
+
+    private MutationResult(Status status, String message, Animal animal) {
+        this.status = status;
+        this.message = message;
+        this.animal = animal;
+    }
+
+    static MutationResult success(Animal animal, String message) {
+        return new MutationResult(Status.SUCCESS, message, animal);
+    }
+
+    static MutationResult failure(Status status, String message) {
+        return new MutationResult(status, message, null);
+    }
+
+    public Status getStatus() { return status; }
+    public String getMessage() { return message; }
+    public Animal getAnimal() { return animal; }
+    public boolean isSuccess() { return status == Status.SUCCESS; }
+
+    @Override
+    public String toString() {
+        return status + ": " + message;
+    }
+}
@@ -0,0 +1,182 @@
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Password hashes for users.txt: PBKDF2-HMAC-SHA256 with a random salt per user, stored as
+// "pbkdf2$<iterations>$<salt>$<hash>" (Base64, so no commas). The iteration count is calibrated
+// at startup so one hash takes about -Dfarm.password.targetMillis (default 100), unless fixed with
+// -Dfarm.password.iterations=N. Hashes from before this format (a bare String.hashCode) still
+// verify, and needsRehash tells the caller to replace them.
+//
+// Successful verifications are remembered for a short time (-Dfarm.password.cacheSeconds, default
+// 300) so a kiosk that logs in again and again pays for the slow hash once. The cache holds a
+// SHA-256 of the stored hash and the password, never the password, and at most CACHE_SIZE entries.
+class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final int MIN_ITERATIONS = 10_000;
+    private static final int MAX_ITERATIONS = 10_000_000;
+    private static final int CACHE_SIZE = 128;
+    private static final long WARM_UP_MILLIS = 2000;
+    private static final long MAX_CALIBRATION_MILLIS = 6000;
+
+    private final int iterations;
+    private final long cacheTtlNanos;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, CachedVerification> cache = new LinkedHashMap<String, CachedVerification>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedVerification> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static final class CachedVerification {
+        final byte[] digest;
+        final long expiresAt;
+
+        CachedVerification(byte[] digest, long expiresAt) {
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Shared instance, calibrated on first use
+    private static final class Default {
+        static final PasswordHasher INSTANCE = new PasswordHasher(
+                Integer.getInteger("farm.password.iterations", calibrate(Long.getLong("farm.password.targetMillis", 100))),
+                TimeUnit.SECONDS.toNanos(Long.getLong("farm.password.cacheSeconds", 300)));
+    }
+
+    static PasswordHasher getDefault() {
+        return Default.INSTANCE;
+    }
+
+    PasswordHasher(int iterations, long cacheTtlNanos) {
+        this.iterations = iterations;
+        this.cacheTtlNanos = cacheTtlNanos;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    // Checks a password against a stored hash of either format. The user name keys the cache.
+    public boolean verify(String username, String password, String stored) {
+        byte[] digest = cacheDigest(password, stored);
+        synchronized (cache) {
+            CachedVerification cached = cache.get(username);
+            if (cached != null && System.nanoTime() - cached.expiresAt < 0
+                    && MessageDigest.isEqual(cached.digest, digest)) {
+                return true;
+            }
+        }
+
+        boolean valid = stored.startsWith(PREFIX) ? verifyPbkdf2(password, stored)
+                : String.valueOf(password.hashCode()).equals(stored);
+        if (valid && cacheTtlNanos > 0) {
+            synchronized (cache) {
+                cache.put(username, new CachedVerification(digest, System.nanoTime() + cacheTtlNanos));
+            }
+        }
+        return valid;
+    }
+
+    // True for legacy hashes and for ones made with fewer iterations than are used now
+    public boolean needsRehash(String stored) {
+        if (!stored.startsWith(PREFIX)) return true;
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    // Drops a user's remembered verification, e.g. when the password changes or the account is disabled
+    public void forget(String username) {
+        synchronized (cache) {
+            cache.remove(username);
+        }
+    }
+
+    private static boolean verifyPbkdf2(String password, String stored) {
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        try {
+            int rounds = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, rounds));
+        } catch (IllegalArgumentException e) {
+            return false; // Corrupt entry; NumberFormatException is one too
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int rounds) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, rounds, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] cacheDigest(String password, String stored) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(stored.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            return sha256.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Iterations for one hash to take about the target time on this machine, once the JIT has
+    // compiled the HMAC. A cold one is tens of times slower and can hold steady for a second or
+    // so before the compiler catches up, so the probe repeats for at least WARM_UP_MILLIS and
+    // until its best time stops improving (or MAX_CALIBRATION_MILLIS pass) before the cost is
+    // scaled from it. UserManagement starts this in the background at startup.
+    private static int calibrate(long targetMillis) {
+        byte[] salt = new byte[SALT_BYTES];
+        int probe = MIN_ITERATIONS;
+        long began = System.nanoTime();
+        long warm = began + TimeUnit.MILLISECONDS.toNanos(WARM_UP_MILLIS);
+        long giveUp = began + TimeUnit.MILLISECONDS.toNanos(MAX_CALIBRATION_MILLIS);
+        long best = Long.MAX_VALUE;
+        int stale = 0;
+        while ((stale < 5 || System.nanoTime() - warm < 0) && System.nanoTime() - giveUp < 0) {
+            long start = System.nanoTime();
+            pbkdf2("calibration", salt, probe);
+            long elapsed = System.nanoTime() - start;
+            if (elapsed < best * 0.9) {
+                stale = 0;
+            } else {
+                stale++;
+            }
+            best = Math.min(best, elapsed);
+        }
+        double scaled = (double) probe * TimeUnit.MILLISECONDS.toNanos(targetMillis) / Math.max(1, best);
+        long rounded = Math.round(scaled / 1000) * 1000;
+        return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, rounded));
+    }
+}
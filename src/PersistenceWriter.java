@@ -0,0 +1,211 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Background thread that persists changes off the caller's thread.
+// Changes are coalesced into batches: once a change arrives the writer waits up to the flush
+// delay for more, cutting the wait short when the batch reaches the size limit, on flush() or on
+// close(), and whatever queues up while a batch is being written joins the next one. A vet walking
+// a pen or an import loop therefore costs one write per burst instead of one per edit.
+class PersistenceWriter implements Closeable {
+    // Writes one batch of change records in order
+    interface Sink {
+        void write(List<String[]> records) throws IOException;
+    }
+
+    // Called on the writer thread when a batch could not be written: an IOException, or a runtime
+    // exception from the sink, which must not end the writer and strand every later change
+    interface FailureHandler {
+        void failed(List<String[]> records, Exception error);
+    }
+
+    private static final String[] STOP = new String[0];
+    private static final String[] WAKE = new String[0]; // Ends the flush delay early, not a record
+
+    private final BlockingQueue<String[]> pending = new LinkedBlockingQueue<>();
+    private final Sink sink;
+    private final FailureHandler failureHandler;
+    private final long delayNanos;
+    private final int maxBatch;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // Records submitted and records handled (written or handed to the failure handler), for flush()
+    private final AtomicLong submitted = new AtomicLong();
+    private long completed; // Guarded by this
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+
+    public PersistenceWriter(Sink sink, FailureHandler failureHandler) {
+        this(sink, failureHandler, 0, Integer.MAX_VALUE);
+    }
+
+    // Waits up to delayMillis after a change for more before writing, and writes at most maxBatch records at once
+    public PersistenceWriter(Sink sink, FailureHandler failureHandler, long delayMillis, int maxBatch) {
+        this.sink = sink;
+        this.failureHandler = failureHandler;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        this.maxBatch = maxBatch;
+        this.thread = new Thread(this::run, "persistence-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public void submit(String... record) {
+        if (closed) {
+            throw new IllegalStateException("Persistence writer is closed");
+        }
+        submitted.incrementAndGet();
+        pending.add(record);
+    }
+
+    // Queues several records at once so they are written as one batch
+    public void submitAll(List<String[]> records) {
+        if (closed) {
+            throw new IllegalStateException("Persistence writer is closed");
+        }
+        submitted.addAndGet(records.size());
+        pending.addAll(records);
+    }
+
+    public int pendingCount() {
+        return (int) (submitted.get() - completedCount());
+    }
+
+    // Writes everything submitted so far without waiting out the flush delay, and returns once it
+    // has been written (or reported to the failure handler)
+    public void flush() throws InterruptedException {
+        long target = submitted.get();
+        if (completedCount() >= target) return;
+        pending.add(WAKE);
+        synchronized (this) {
+            while (completed < target && thread.isAlive()) {
+                wait(100);
+            }
+        }
+    }
+
+    public long getSubmittedCount() { return submitted.get(); }
+    public long getBatchCount() { return batches.sum(); }
+    public long getFailedBatchCount() { return failedBatches.sum(); }
+
+    // Writes saved by coalescing: records written minus the batches they were written in
+    public long getWritesAvoided() {
+        return Math.max(0, completedCount() - getBatchCount());
+    }
+
+    // Time the sink took per batch, in nanoseconds
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    // Time from the writer taking the first change of a batch to the batch being written, flush
+    // delay included, in nanoseconds
+    public LatencyHistogram getFlushLatency() {
+        return queueLatency;
+    }
+
+    public String getStats() {
+        return "submitted=" + getSubmittedCount() + " batches=" + getBatchCount() + " avoided=" + getWritesAvoided()
+                + " failed=" + getFailedBatchCount() + " pending=" + pendingCount()
+                + " write " + writeLatency.summary() + " flush " + queueLatency.summary();
+    }
+
+    // Writes everything already submitted, then stops the writer thread
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        pending.add(STOP);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized long completedCount() {
+        return completed;
+    }
+
+    private void run() {
+        List<String[]> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            String[] first;
+            try {
+                first = pending.take();
+            } catch (InterruptedException e) {
+                continue; // Only close() stops the writer, so nothing submitted is lost
+            }
+            long firstQueued = System.nanoTime();
+            if (first == STOP) {
+                stopping = true;
+            } else {
+                if (first != WAKE) batch.add(first);
+                stopping = collect(batch, first == WAKE ? firstQueued : firstQueued + delayNanos);
+            }
+
+            if (!batch.isEmpty()) {
+                long start = System.nanoTime();
+                try {
+                    sink.write(batch);
+                } catch (IOException | RuntimeException e) {
+                    failedBatches.increment();
+                    failureHandler.failed(new ArrayList<>(batch), e);
+                }
+                long end = System.nanoTime();
+                batches.increment();
+                writeLatency.record(end - start);
+                queueLatency.record(end - firstQueued);
+                completed(batch.size());
+            }
+            batch.clear();
+        }
+    }
+
+    // Gathers more records until the deadline, the size limit, a flush or a stop; returns true on stop
+    private boolean collect(List<String[]> batch, long deadline) {
+        while (true) {
+            int from = batch.size();
+            pending.drainTo(batch, maxBatch - from);
+            boolean wake = false;
+            boolean stop = false;
+            for (int i = batch.size() - 1; i >= from; i--) {
+                String[] record = batch.get(i);
+                if (record == STOP || record == WAKE) {
+                    batch.remove(i);
+                    stop |= record == STOP;
+                    wake = true;
+                }
+            }
+            if (stop) return true;
+            long remaining = deadline - System.nanoTime();
+            if (wake || batch.size() >= maxBatch || remaining <= 0) return false;
+
+            String[] next;
+            try {
+                next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (next == null || next == WAKE) return false;
+            if (next == STOP) return true;
+            batch.add(next);
+        }
+    }
+
+    private synchronized void completed(int records) {
+        completed += records;
+        notifyAll();
+    }
+}
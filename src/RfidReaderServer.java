@@ -0,0 +1,334 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Local listener for chute RFID readers, on TCP and UDP at the same port of the loopback interface.
+// A frame is one line, "<reader>,<rfid>" or just "<rfid>"; a datagram may carry several lines.
+// Frames go through a bounded queue to scanner threads that resolve them against the herd in
+// batches. TCP readers are slowed down by blocking while the queue is full, which backs up their
+// socket; UDP can't push back, so datagrams that don't fit are dropped and counted.
+// Reads of the same tag by the same reader within the dedup window (from the last read, so an
+// animal standing at the chute is reported once) are counted as duplicates and not scanned.
+// Each TCP connection is read on a thread of a pool capped at maxConnections; connections beyond
+// that are refused and counted. Closing stops every listener and connection thread before the
+// scanners are told to stop, so no frame can be queued behind the stop; a frame a connection
+// thread was still waiting to queue when it was interrupted is counted as dropped.
+class RfidReaderServer implements Closeable {
+    // Receives every scan on a scanner thread
+    interface ScanHandler {
+        void scanned(String readerId, RfidScanResult result);
+    }
+
+    private static final int MAX_BATCH = 1024;
+    private static final int DEFAULT_MAX_CONNECTIONS = 64;
+    private static final Frame STOP = new Frame("", "", 0);
+
+    private final LivestockManagement system;
+    private final int requestedPort;
+    private final BlockingQueue<Frame> frames;
+    private final long dedupWindowNanos;
+    private final int scannerCount;
+    private final ScanHandler handler;
+
+    private final Map<String, Long> lastReads = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private final AtomicInteger runningScanners = new AtomicInteger();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor connectionThreads; // One per open TCP connection, up to the cap
+    private final List<Thread> listeners = new ArrayList<>(); // TCP accept and UDP receive
+    private final List<Thread> scanners = new ArrayList<>();
+    private ServerSocket tcpSocket;
+    private DatagramSocket udpSocket;
+    private volatile boolean closed;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder refusedConnections = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder unknownTags = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    // One read as received, stamped with its arrival time for the latency metric
+    private static final class Frame {
+        final String readerId;
+        final String rfidTag;
+        final long receivedNanos;
+
+        Frame(String readerId, String rfidTag, long receivedNanos) {
+            this.readerId = readerId;
+            this.rfidTag = rfidTag;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    public RfidReaderServer(LivestockManagement system, int port, ScanHandler handler) {
+        this(system, port, 65_536, 2000, 2, DEFAULT_MAX_CONNECTIONS, handler);
+    }
+
+    RfidReaderServer(LivestockManagement system, int port, int queueCapacity, long dedupWindowMillis,
+                     int scannerCount, int maxConnections, ScanHandler handler) {
+        this.system = system;
+        this.connectionThreads = new ThreadPoolExecutor(0, maxConnections, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), task -> {
+                    Thread thread = new Thread(task, "rfid-tcp-connection");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.requestedPort = port;
+        this.frames = new ArrayBlockingQueue<>(queueCapacity);
+        this.dedupWindowNanos = TimeUnit.MILLISECONDS.toNanos(dedupWindowMillis);
+        this.scannerCount = scannerCount;
+        this.handler = handler;
+    }
+
+    // Binds both sockets and starts the listener and scanner threads; port 0 picks a free port
+    public synchronized void start() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        tcpSocket = new ServerSocket(requestedPort, 50, loopback);
+        try {
+            udpSocket = new DatagramSocket(tcpSocket.getLocalPort(), loopback);
+            udpSocket.setReceiveBufferSize(1 << 20);
+        } catch (IOException e) {
+            tcpSocket.close();
+            throw e;
+        }
+
+        listeners.add(startThread("rfid-tcp-accept", this::acceptConnections));
+        listeners.add(startThread("rfid-udp", this::receiveDatagrams));
+        runningScanners.set(scannerCount);
+        for (int i = 0; i < scannerCount; i++) {
+            scanners.add(startThread("rfid-scanner-" + i, this::scanFrames));
+        }
+    }
+
+    public int getPort() {
+        return tcpSocket.getLocalPort();
+    }
+
+    public long getReceivedCount() { return received.sum(); }
+    public long getMalformedCount() { return malformed.sum(); }
+    public long getDroppedCount() { return dropped.sum(); }
+    public long getRefusedConnectionCount() { return refusedConnections.sum(); }
+    public int getConnectionCount() { return connections.size(); }
+    public long getDuplicateCount() { return duplicates.sum(); }
+    public long getScannedCount() { return scanned.sum(); }
+    public long getUnknownTagCount() { return unknownTags.sum(); }
+    public int getQueueDepth() { return frames.size(); }
+
+    // Time from a frame arriving to its scan completing, in nanoseconds
+    public LatencyHistogram getScanLatency() {
+        return latency;
+    }
+
+    public String getStats() {
+        return "received=" + getReceivedCount() + " scanned=" + getScannedCount() + " duplicates=" + getDuplicateCount()
+                + " unknown=" + getUnknownTagCount() + " dropped=" + getDroppedCount() + " malformed=" + getMalformedCount()
+                + " queued=" + getQueueDepth() + " connections=" + getConnectionCount()
+                + " refused=" + getRefusedConnectionCount() + " latency " + latency.summary();
+    }
+
+    // Stops listening and reading connections, scans whatever is already queued, then stops the
+    // scanner threads
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            if (tcpSocket != null) tcpSocket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        if (udpSocket != null) udpSocket.close();
+        for (Socket connection : connections) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+
+        connectionThreads.shutdownNow(); // Interrupts any connection blocked on a full queue
+
+        try {
+            for (Thread thread : listeners) {
+                thread.join();
+            }
+            connectionThreads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            // Nothing else can queue a frame now, so none can end up behind the stop
+            frames.put(STOP); // Each scanner hands it on to the next before stopping
+            for (Thread thread : scanners) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Thread startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                Socket connection = tcpSocket.accept();
+                connections.add(connection);
+                if (closed) { // close() may already have closed the connections it knew of
+                    connections.remove(connection);
+                    connection.close();
+                    continue;
+                }
+                try {
+                    connectionThreads.execute(() -> readConnection(connection));
+                } catch (RejectedExecutionException e) {
+                    refusedConnections.increment(); // At the cap, or closing
+                    connections.remove(connection);
+                    connection.close();
+                }
+            } catch (IOException e) {
+                if (!closed) System.err.println("RFID reader server: " + e.getMessage());
+            }
+        }
+    }
+
+    private void readConnection(Socket connection) {
+        String defaultReader = "tcp:" + connection.getPort();
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                Frame frame = parseFrame(line, defaultReader);
+                if (frame == null) continue;
+                try {
+                    frames.put(frame); // Blocks while full, which backs up the reader's socket
+                } catch (InterruptedException e) {
+                    dropped.increment(); // Closing while the queue was full
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Reader disconnected or server closing
+        } finally {
+            connections.remove(connection);
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+    }
+
+    private void receiveDatagrams() {
+        byte[] buffer = new byte[65_536];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!closed) {
+            try {
+                udpSocket.receive(packet);
+            } catch (IOException e) {
+                if (!closed) System.err.println("RFID reader server: " + e.getMessage());
+                continue;
+            }
+
+            String defaultReader = "udp:" + packet.getPort();
+            String text = new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.US_ASCII);
+            int start = 0;
+            while (start < text.length()) {
+                int end = text.indexOf('\n', start);
+                if (end < 0) end = text.length();
+                Frame frame = parseFrame(text.substring(start, end), defaultReader);
+                if (frame != null && !frames.offer(frame)) {
+                    dropped.increment();
+                }
+                start = end + 1;
+            }
+        }
+    }
+
+    // Returns null for blank lines and counts other unusable ones as malformed
+    private Frame parseFrame(String line, String defaultReader) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) return null;
+        received.increment();
+
+        int comma = trimmed.indexOf(',');
+        String readerId = comma < 0 ? defaultReader : trimmed.substring(0, comma).trim();
+        String tag = comma < 0 ? trimmed : trimmed.substring(comma + 1).trim();
+        if (tag.isEmpty() || readerId.isEmpty() || tag.indexOf(',') >= 0) {
+            malformed.increment();
+            return null;
+        }
+        return new Frame(readerId, tag, System.nanoTime());
+    }
+
+    private void scanFrames() {
+        List<Frame> batch = new ArrayList<>(MAX_BATCH);
+        List<Frame> fresh = new ArrayList<>(MAX_BATCH);
+        List<String> tags = new ArrayList<>(MAX_BATCH);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(frames.take());
+            } catch (InterruptedException e) {
+                continue; // Only close() stops the scanners, so nothing queued is lost
+            }
+            frames.drainTo(batch, MAX_BATCH - 1);
+            if (batch.remove(STOP)) {
+                stopping = true;
+                passOnStop();
+            }
+
+            long now = System.nanoTime();
+            for (Frame frame : batch) {
+                Long previous = lastReads.put(frame.readerId + '\u0000' + frame.rfidTag, frame.receivedNanos);
+                if (previous != null && frame.receivedNanos - previous < dedupWindowNanos) {
+                    duplicates.increment();
+                } else {
+                    fresh.add(frame);
+                    tags.add(frame.rfidTag);
+                }
+            }
+
+            List<RfidScanResult> results = system.scanRFIDTags(tags);
+            long done = System.nanoTime();
+            for (int i = 0; i < results.size(); i++) {
+                Frame frame = fresh.get(i);
+                RfidScanResult result = results.get(i);
+                latency.record(done - frame.receivedNanos);
+                scanned.increment();
+                if (!result.isFound()) unknownTags.increment();
+                if (handler != null) handler.scanned(frame.readerId, result);
+            }
+
+            sweepDedupWindow(now);
+            batch.clear();
+            fresh.clear();
+            tags.clear();
+        }
+    }
+
+    private void passOnStop() {
+        if (runningScanners.decrementAndGet() == 0) return;
+        try {
+            frames.put(STOP);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // About once per window, forgets reads that are too old to make anything a duplicate
+    private void sweepDedupWindow(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + dedupWindowNanos)) return;
+        lastReads.values().removeIf(time -> now - time >= dedupWindowNanos);
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load generator for RfidReaderServer: simulated chute readers sending tag reads over TCP or UDP.
+//
+//   java RfidReaderSimulator [--udp] [--rate 20000] [--seconds 10] [--readers 8] [--repeat 0.2]
+//                            [--herd 50000] [--target host:port]
+//
+// Without --target it starts a server in-process on a free localhost port. With --herd it scans
+// against that many generated animals in a temporary directory, otherwise against the records
+// in the working directory. --repeat is the share of reads that repeat a reader's previous tag,
+// like an animal lingering at the chute, which the server should count as duplicates.
+public class RfidReaderSimulator {
+    private static final int DATAGRAM_LIMIT = 1400; // Stay under a typical MTU
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        boolean udp = options.containsKey("udp");
+        int rate = Integer.parseInt(options.getOrDefault("rate", "20000"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "10"));
+        int readers = Integer.parseInt(options.getOrDefault("readers", "8"));
+        double repeat = Double.parseDouble(options.getOrDefault("repeat", "0.2"));
+
+        File herdDirectory = null;
+        LivestockManagement system = null;
+        RfidReaderServer server = null;
+        String host = "localhost";
+        int port;
+        List<String> tags;
+
+        if (options.containsKey("target")) {
+            String[] target = options.get("target").split(":");
+            host = target[0];
+            port = Integer.parseInt(target[1]);
+            tags = generatedTags(Integer.parseInt(options.getOrDefault("herd", "10000")));
+        } else {
+            if (options.containsKey("herd")) {
+                herdDirectory = Files.createTempDirectory("rfid-sim").toFile();
+                system = new LivestockManagement(herdDirectory);
+                system.registerAnimals(generatedHerd(Integer.parseInt(options.get("herd"))));
+            } else {
+                system = new LivestockManagement();
+            }
+            tags = new ArrayList<>();
+            for (Animal animal : system.getAllAnimals()) tags.add(animal.getRFIDTag());
+            if (tags.isEmpty()) tags = generatedTags(1000);
+
+            server = new RfidReaderServer(system, 0, null);
+            server.start();
+            port = server.getPort();
+        }
+
+        System.out.printf("Sending %d reads/sec from %d %s readers to %s:%d for %d s%n",
+                rate, readers, udp ? "UDP" : "TCP", host, port, seconds);
+        LongAdder sent = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < readers; i++) {
+            SimulatedReader reader = new SimulatedReader("chute-" + (i + 1), host, port, udp,
+                    Math.max(1, rate / readers), repeat, tags, deadline, sent, i);
+            Thread thread = new Thread(reader, reader.name);
+            thread.start();
+            threads.add(thread);
+        }
+
+        long start = System.nanoTime();
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(1000);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%5.1fs sent=%d (%.0f/s)%s%n", elapsed, sent.sum(), sent.sum() / elapsed,
+                    server == null ? "" : " " + server.getStats());
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (server != null) {
+            server.close();
+            System.out.println("Final: sent=" + sent.sum() + " " + server.getStats());
+            system.close();
+        } else {
+            System.out.println("Final: sent=" + sent.sum());
+        }
+        if (herdDirectory != null) {
+            deleteRecursively(herdDirectory);
+        }
+    }
+
+    // One reader sending at a steady rate in small bursts every millisecond
+    private static class SimulatedReader implements Runnable {
+        final String name;
+        private final String host;
+        private final int port;
+        private final boolean udp;
+        private final int rate;
+        private final double repeat;
+        private final List<String> tags;
+        private final long deadline;
+        private final LongAdder sent;
+        private final Random random;
+        private long readsSent;
+
+        SimulatedReader(String name, String host, int port, boolean udp, int rate, double repeat,
+                        List<String> tags, long deadline, LongAdder sent, long seed) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.udp = udp;
+            this.rate = rate;
+            this.repeat = repeat;
+            this.tags = tags;
+            this.deadline = deadline;
+            this.sent = sent;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (udp) {
+                    runUdp();
+                } else {
+                    runTcp();
+                }
+            } catch (IOException e) {
+                System.err.println(name + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void runTcp() throws IOException, InterruptedException {
+            try (Socket socket = new Socket(host, port);
+                 Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+                String previous = null;
+                long start = System.nanoTime();
+                while (System.nanoTime() < deadline) {
+                    for (long due = readsDue(start); due > 0; due--) {
+                        previous = nextTag(previous);
+                        out.write(name + "," + previous + "\n");
+                        readsSent++;
+                        sent.increment();
+                    }
+                    out.flush();
+                    Thread.sleep(1);
+                }
+            }
+        }
+
+        private void runUdp() throws IOException, InterruptedException {
+            try (DatagramSocket socket = new DatagramSocket()) {
+                InetAddress address = InetAddress.getByName(host);
+                StringBuilder datagram = new StringBuilder();
+                String previous = null;
+                long start = System.nanoTime();
+                while (System.nanoTime() < deadline) {
+                    for (long due = readsDue(start); due > 0; due--) {
+                        previous = nextTag(previous);
+                        String frame = name + "," + previous + "\n";
+                        if (datagram.length() + frame.length() > DATAGRAM_LIMIT) {
+                            send(socket, address, datagram);
+                        }
+                        datagram.append(frame);
+                        readsSent++;
+                        sent.increment();
+                    }
+                    if (datagram.length() > 0) send(socket, address, datagram);
+                    Thread.sleep(1);
+                }
+            }
+        }
+
+        private void send(DatagramSocket socket, InetAddress address, StringBuilder datagram) throws IOException {
+            byte[] bytes = datagram.toString().getBytes(StandardCharsets.US_ASCII);
+            socket.send(new DatagramPacket(bytes, bytes.length, address, port));
+            datagram.setLength(0);
+        }
+
+        // Reads that should have been sent by now but haven't, keeping the long-run rate exact
+        private long readsDue(long start) {
+            return (System.nanoTime() - start) * rate / TimeUnit.SECONDS.toNanos(1) - readsSent;
+        }
+
+        private String nextTag(String previous) {
+            if (previous != null && random.nextDouble() < repeat) return previous;
+            return tags.get(random.nextInt(tags.size()));
+        }
+    }
+
+    private static List<Animal> generatedHerd(int size) {
+        List<Animal> herd = new ArrayList<>(size);
+        List<String> tags = generatedTags(size);
+        for (int i = 0; i < size; i++) {
+            herd.add(new Animal(String.format("SIM-%07d", i), "Simulated", 2, 400, tags.get(i)));
+        }
+        return herd;
+    }
+
+    private static List<String> generatedTags(int count) {
+        List<String> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tags.add(String.format("SIM%08X", i));
+        }
+        return tags;
+    }
+
+    // "--rate 500 --udp" -> {rate=500, udp=}
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            options.put(name, hasValue ? args[++i] : "");
+        }
+        return options;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,19 @@
+// Outcome of resolving one RFID read against the herd
+class RfidScanResult {
+    private final String rfidTag;
+    private final Animal animal;
+
+    public RfidScanResult(String rfidTag, Animal animal) {
+        this.rfidTag = rfidTag;
+        this.animal = animal;
+    }
+
+    public String getRFIDTag() { return rfidTag; }
+    public Animal getAnimal() { return animal; }
+    public boolean isFound() { return animal != null; }
+
+    @Override
+    public String toString() {
+        return isFound() ? animal.toString() : "No animal found for RFID tag: " + rfidTag;
+    }
+}
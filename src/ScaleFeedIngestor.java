@@ -0,0 +1,156 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Feeds walk-over scale readings into LivestockManagement in batches.
+// Readings from any number of threads queue up in a bounded buffer, and callers block while it
+// is full, so a fast feed can't outrun the herd. One thread takes up to a batch of readings, or
+// whatever arrived within the linger time, and applies them with a single recordWeights call:
+// tags are resolved together, each animal is updated once, and the batch is persisted as one flush.
+// Submitters share the read side of a lock that close() takes exclusively to queue the stop, so
+// no reading is accepted after the stop and then lost.
+class ScaleFeedIngestor implements Closeable {
+    private static final WeightReading STOP = new WeightReading("", 0, null);
+
+    private final LivestockManagement system;
+    private final BlockingQueue<WeightReading> pending;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Thread thread;
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+    private boolean closed; // Guarded by closing
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder unknownTags = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public ScaleFeedIngestor(LivestockManagement system) {
+        this(system, 50_000, 5_000, 200);
+    }
+
+    ScaleFeedIngestor(LivestockManagement system, int capacity, int batchSize, long lingerMillis) {
+        this.system = system;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.thread = new Thread(this::run, "scale-feed");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Queues one reading, waiting for room if the buffer is full. A reading without a tag or time,
+    // or with a negative, infinite or NaN weight, is refused.
+    public void submit(WeightReading reading) throws InterruptedException {
+        if (!reading.isValid()) {
+            throw new IllegalArgumentException("Invalid scale reading: " + reading);
+        }
+        closing.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Scale feed is closed");
+            }
+            pending.put(reading);
+            accepted.increment();
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    // Queues every reading of a feed, one "<rfid>,<weight>,<timestamp>" per line; other lines,
+    // and readings with an impossible weight, are counted as malformed
+    public void ingest(BufferedReader in) throws IOException, InterruptedException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) continue;
+            WeightReading reading = WeightReading.parse(line);
+            if (reading == null) {
+                malformed.increment();
+            } else {
+                submit(reading);
+            }
+        }
+    }
+
+    public long getAcceptedCount() { return accepted.sum(); }
+    public long getAppliedCount() { return applied.sum(); }
+    public long getUnknownTagCount() { return unknownTags.sum(); }
+    public long getStaleCount() { return stale.sum(); } // Older than the animal's current weight, history only
+    public long getMalformedCount() { return malformed.sum(); }
+    public long getBatchCount() { return batches.sum(); }
+
+    // Applies everything already queued, then stops the ingestion thread
+    @Override
+    public void close() {
+        closing.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            pending.put(STOP); // The feed thread keeps taking, so this waits at most for one batch
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            closing.writeLock().unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<WeightReading> batch = new ArrayList<>(batchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(pending.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize && batch.get(batch.size() - 1) != STOP) {
+                    if (pending.drainTo(batch, batchSize - batch.size()) > 0) continue;
+                    WeightReading next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                continue; // Only close() stops the feed, so nothing queued is lost
+            }
+
+            if (batch.remove(STOP)) {
+                stopping = true;
+            }
+            if (!batch.isEmpty()) {
+                apply(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    private void apply(List<WeightReading> batch) {
+        try {
+            List<MutationResult> rejected = system.recordWeights(batch);
+            applied.add(batch.size() - rejected.size());
+            for (MutationResult result : rejected) {
+                if (result.getStatus() == MutationResult.Status.STALE) {
+                    stale.increment();
+                } else {
+                    unknownTags.increment();
+                }
+            }
+            batches.increment();
+        } catch (RuntimeException e) {
+            System.err.println("Error applying scale readings: " + e);
+        }
+    }
+}
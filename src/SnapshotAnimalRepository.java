@@ -0,0 +1,172 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// The herd as a binary snapshot (FarmRecords_v2.fsnap) plus a journal of the changes since it,
+// with the legacy .fdf text records imported once on first start. Neither file has an index, so
+// the whole herd is always loaded and lookups search the loaded map. If the journal fails,
+// changes are saved by rewriting the full snapshot instead.
+class SnapshotAnimalRepository implements AnimalRepository {
+    static final String DATA_FILE = "FarmRecords_v2.fdf"; // Legacy text records, imported once
+    static final String SNAPSHOT_FILE = "FarmRecords_v2.fsnap";
+
+    // Journal settings, overridable with -Dfarm.journal.fsync=ALWAYS|INTERVAL|NEVER and -Dfarm.journal.compactBytes=N
+    private static final AnimalJournal.FsyncPolicy FSYNC_POLICY =
+            AnimalJournal.FsyncPolicy.valueOf(System.getProperty("farm.journal.fsync", "INTERVAL"));
+    private static final long COMPACTION_THRESHOLD = Long.getLong("farm.journal.compactBytes", 4L * 1024 * 1024);
+
+    private final Map<String, Animal> herd;
+    private final Consumer<String> reporter;
+    private final File snapshotFile;
+    private final File legacyFile;
+    private volatile AnimalJournal journal;
+    private volatile boolean loaded;
+
+    SnapshotAnimalRepository(File dataDirectory, Map<String, Animal> herd, Consumer<String> reporter) {
+        this.herd = herd;
+        this.reporter = reporter;
+        this.snapshotFile = new File(dataDirectory, SNAPSHOT_FILE);
+        this.legacyFile = new File(dataDirectory, DATA_FILE);
+    }
+
+    // True if there is anything on disk to load
+    boolean exists() {
+        return snapshotFile.exists() || AnimalSnapshot.generation(snapshotFile, 1).exists()
+                || new File(snapshotFile.getPath() + ".journal").exists() || legacyFile.exists();
+    }
+
+    @Override
+    public void load(Consumer<Animal> sink, List<String> problems) {
+        read(problems);
+        List<String> ids = new ArrayList<>(herd.keySet());
+        Collections.sort(ids);
+        for (String id : ids) sink.accept(herd.get(id));
+    }
+
+    @Override
+    public boolean needsWholeHerd() {
+        return true;
+    }
+
+    private void read(List<String> problems) {
+        loaded = true;
+        try {
+            List<String> older = new ArrayList<>();
+            File read = AnimalSnapshot.readNewest(snapshotFile, herd, older);
+            if (read != null && !older.isEmpty()) {
+                problems.addAll(older);
+                problems.add("Loaded the older snapshot " + read.getName() + "; changes made after it may be missing.");
+            }
+            if (read == null && legacyFile.exists()) {
+                // First start after the switch to binary snapshots: import the text records once
+                AnimalRecordFormat.Report report = new AnimalRecordFormat.Report(legacyFile.getName());
+                AnimalSnapshot.readText(legacyFile, herd, report);
+                if (report.getErrorCount() > 0) {
+                    List<String> errors = report.getErrors();
+                    problems.add(report.summary() + ":\n" + String.join("\n", errors.subList(0, Math.min(10, errors.size())))
+                            + (report.getErrorCount() > 10 ? "\n..." : ""));
+                }
+                AnimalSnapshot.write(herd.values(), snapshotFile);
+            }
+        } catch (IOException e) {
+            problems.add("Error loading data from file: " + e.getMessage());
+            return; // Don't journal on top of a snapshot we couldn't read
+        }
+
+        // Apply changes made since the last snapshot
+        try {
+            journal = new AnimalJournal(snapshotFile, FSYNC_POLICY, COMPACTION_THRESHOLD);
+            journal.replayInto(herd);
+        } catch (IOException e) {
+            problems.add("Error opening journal, changes will be saved to the full file: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    // Loads the herd first if nobody has
+    @Override
+    public Animal findById(String id) {
+        loadIfNeeded();
+        return herd.get(id);
+    }
+
+    // A search of the whole herd; LivestockManagement keeps its own RFID index
+    @Override
+    public Animal findByRfid(String rfidTag) {
+        loadIfNeeded();
+        for (Animal animal : herd.values()) {
+            if (animal.getRFIDTag().equals(rfidTag)) return animal;
+        }
+        return null;
+    }
+
+    // Appends a batch of changes to the journal, or rewrites the whole file once for the batch if
+    // journaling is unavailable
+    @Override
+    public void write(List<String[]> changes) throws IOException {
+        AnimalJournal current = journal;
+        if (current == null) {
+            AnimalSnapshot.write(herd.values(), snapshotFile);
+            return;
+        }
+
+        int start = 0;
+        for (int i = 0; i < changes.size(); i++) {
+            if (changes.get(i)[0].equals(AnimalJournal.CHECKPOINT)) {
+                if (i > start) current.appendAll(changes.subList(start, i));
+                current.checkpoint(herd.values());
+                start = i + 1;
+            }
+        }
+        if (start < changes.size()) current.appendAll(changes.subList(start, changes.size()));
+    }
+
+    @Override
+    public void writeFailed(List<String[]> changes, Exception error) {
+        if (journal != null) {
+            reporter.accept("Error writing journal, saving full file instead: " + error.getMessage());
+            disableJournal();
+        } else {
+            reporter.accept("Error saving data to file: " + error.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        AnimalJournal current = journal;
+        if (current == null) return;
+        try {
+            current.close();
+        } catch (IOException e) {
+            reporter.accept("Error closing journal: " + e.getMessage());
+        }
+        if (current.checkpointFailed()) {
+            disableJournal(); // The last checkpoint never reached disk, so save the herd in full now
+        }
+    }
+
+    private synchronized void loadIfNeeded() {
+        if (loaded) return;
+        List<String> problems = new ArrayList<>();
+        read(problems);
+        problems.forEach(reporter);
+    }
+
+    // Falls back to full-file saves; the journal is only dropped once a complete snapshot is on disk
+    private synchronized void disableJournal() {
+        AnimalJournal failed = journal;
+        if (failed == null) return;
+        journal = null;
+        try {
+            failed.close();
+            AnimalSnapshot.write(herd.values(), snapshotFile);
+            failed.discard();
+        } catch (IOException e) {
+            reporter.accept("Error retiring journal: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.io.*;
+import java.util.Collection;
+import java.util.Map;
+
+// One user per line of users.txt, as written by User.toString(). The file has no index, so a
+// lookup reads it from the top and every save rewrites it.
+class TextUserRepository implements UserRepository {
+    static final String USER_FILE = "users.txt";
+
+    private final File userFile;
+
+    TextUserRepository(File dataDirectory) {
+        userFile = new File(dataDirectory, USER_FILE);
+    }
+
+    @Override
+    public void loadAll(Map<String, User> users) throws IOException {
+        if (!userFile.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(userFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                User user = User.fromString(line);
+                if (user != null) {
+                    users.put(user.getUsername(), user);
+                }
+            }
+        }
+    }
+
+    @Override
+    public User find(String username) throws IOException {
+        if (!userFile.exists()) return null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(userFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(username + ",")) return User.fromString(line);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void saveAll(Collection<User> users) throws IOException {
+        try (FileWriter writer = new FileWriter(userFile)) {
+            for (User user : users) {
+                writer.write(user.toString() + "\n");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
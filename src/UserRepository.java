@@ -0,0 +1,31 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+// Where UserManagement keeps its users between runs: users.txt (the default) or, with
+// -Dfarm.storage=btree, a BTreeStore file that can read a single user without the rest.
+interface UserRepository extends Closeable {
+    // Reads every stored user into the map, by user name
+    void loadAll(Map<String, User> users) throws IOException;
+
+    // One stored user, or null
+    User find(String username) throws IOException;
+
+    // Saves the users passed in; with users.txt they replace the whole file
+    void saveAll(Collection<User> users) throws IOException;
+
+    // A B-tree store that won't open falls back to users.txt
+    static UserRepository open(File dataDirectory) {
+        if (AnimalRepository.STORAGE.equals("btree")) {
+            try {
+                return new BTreeUserRepository(dataDirectory);
+            } catch (IOException e) {
+                System.err.println("Error opening the user store, using " + TextUserRepository.USER_FILE
+                        + " instead: " + e.getMessage());
+            }
+        }
+        return new TextUserRepository(dataDirectory);
+    }
+}
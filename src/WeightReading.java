@@ -0,0 +1,41 @@
+import java.time.LocalDateTime;
+
+// One reading from a walk-over scale: the RFID tag it read, the weight in kg and when
+class WeightReading {
+    private final String rfidTag;
+    private final double weight;
+    private final LocalDateTime time;
+
+    public WeightReading(String rfidTag, double weight, LocalDateTime time) {
+        this.rfidTag = rfidTag;
+        this.weight = weight;
+        this.time = time;
+    }
+
+    public String getRFIDTag() { return rfidTag; }
+    public double getWeight() { return weight; }
+    public LocalDateTime getTime() { return time; }
+
+    // A tag, a time and a weight a scale could have read: finite and not negative
+    boolean isValid() {
+        return rfidTag != null && time != null && weight >= 0 && !Double.isInfinite(weight);
+    }
+
+    // Parses a scale feed line "<rfid>,<weight>,<yyyy-mm-ddThh:mm:ss>"; returns null if it isn't a valid one
+    static WeightReading parse(String line) {
+        String[] parts = line.split(",");
+        if (parts.length != 3) return null;
+        try {
+            WeightReading reading = new WeightReading(parts[0].trim(), Double.parseDouble(parts[1].trim()),
+                    LocalDateTime.parse(parts[2].trim()));
+            return reading.isValid() ? reading : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return rfidTag + "," + weight + "," + time;
+    }
+}
@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A bounded AnimalCache over a map standing in for the record store, with a budget of a few
+// animals so that lookups of other animals keep evicting the ones being changed.
+class AnimalCacheTest {
+    private static final int ANIMALS = 20;
+    private static final LocalDate DAY = LocalDate.of(2026, 1, 1);
+
+    private final Map<String, String> store = new ConcurrentHashMap<>();
+
+    private AnimalCache newCache(int animalsInBudget) {
+        for (int i = 0; i < ANIMALS; i++) {
+            store.put(id(i), new Animal(id(i), "Angus", 2, 100, "R" + i).toRecord());
+        }
+        long budget = animalsInBudget * AnimalCache.estimateBytes(new Animal(id(0), "Angus", 2, 100, "R0"));
+        return new AnimalCache(budget, id -> {
+            String record = store.get(id);
+            return record == null ? null : AnimalRecordFormat.parse(record);
+        });
+    }
+
+    @Test
+    void pinnedAnimalIsTheInstanceEveryLookupReturns() {
+        AnimalCache cache = newCache(2);
+        Animal pinned = cache.pin(id(0));
+        for (int i = 1; i < ANIMALS; i++) cache.get(id(i)); // Evicts everything not pinned
+        assertSame(pinned, cache.get(id(0)));
+        assertSame(pinned, cache.pin(id(0)));
+        cache.release(pinned);
+        cache.release(pinned);
+
+        for (int i = 1; i < ANIMALS; i++) cache.get(id(i));
+        assertNotSame(pinned, cache.get(id(0)), "released and evicted, so read again from the store");
+    }
+
+    @Test
+    void changingASecondCopyIsRefused() {
+        AnimalCache cache = newCache(2);
+        Animal stale = cache.get(id(0));
+        for (int i = 1; i < ANIMALS; i++) cache.get(id(i));
+        Animal current = cache.pin(id(0));
+        assertNotSame(stale, current);
+        assertThrows(IllegalStateException.class, () -> cache.changed(stale, 1));
+        cache.release(current);
+    }
+
+    @Test
+    void concurrentChangesUnderEvictionAreNotLost() throws Exception {
+        AnimalCache cache = newCache(3);
+        AtomicLongArray increments = new AtomicLongArray(ANIMALS);
+        int threads = 6;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            workers.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                for (int op = 0; op < 5000; op++) {
+                    int i = random.nextInt(ANIMALS);
+                    if (random.nextBoolean()) {
+                        cache.get(id(random.nextInt(ANIMALS))); // Churn
+                        continue;
+                    }
+                    // What LivestockManagement does for a change: pin, change under the animal's
+                    // lock, count the record, then "write" it and release
+                    Animal animal = cache.pin(id(i));
+                    try {
+                        String[] record;
+                        synchronized (animal) {
+                            animal.updateWeight(animal.getWeight() + 1, DAY.atStartOfDay());
+                            cache.changed(animal, 1);
+                            record = new String[]{AnimalJournal.WEIGHT, id(i), DAY.toString(),
+                                    String.valueOf(animal.getWeight())};
+                            store.put(id(i), animal.toRecord());
+                        }
+                        cache.written(Collections.singletonList(record));
+                        increments.incrementAndGet(i);
+                    } finally {
+                        cache.release(animal);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) worker.get(1, TimeUnit.MINUTES);
+        pool.shutdown();
+
+        for (int i = 0; i < ANIMALS; i++) {
+            double expected = 100 + increments.get(i);
+            assertEquals(expected, cache.get(id(i)).getWeight(), "in memory, " + id(i));
+            assertEquals(expected, AnimalRecordFormat.parse(store.get(id(i))).getWeight(), "stored, " + id(i));
+        }
+        assertEquals(0, cache.getDirtyCount());
+        assertTrue(cache.getEvictionCount() > 0, "the budget should have forced evictions");
+    }
+
+    @Test
+    void aSlowReadDoesNotHoldUpOtherLookups() throws Exception {
+        for (int i = 0; i < ANIMALS; i++) {
+            store.put(id(i), new Animal(id(i), "Angus", 2, 100, "R" + i).toRecord());
+        }
+        CountDownLatch reading = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AnimalCache cache = new AnimalCache(Long.MAX_VALUE, id -> {
+            if (id.equals(id(0))) {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return AnimalRecordFormat.parse(store.get(id));
+        });
+        Animal other = cache.get(id(1));
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<Animal> first = pool.submit(() -> cache.get(id(0)));
+        Future<Animal> second = pool.submit(() -> cache.pin(id(0)));
+        assertTrue(reading.await(10, TimeUnit.SECONDS), "both misses should be reading at once");
+        assertSame(other, CompletableFuture.supplyAsync(() -> cache.get(id(1))).get(10, TimeUnit.SECONDS));
+        release.countDown();
+
+        Animal pinned = second.get(10, TimeUnit.SECONDS);
+        assertSame(pinned, first.get(10, TimeUnit.SECONDS), "one instance, whichever read finished first");
+        assertSame(pinned, cache.get(id(0)));
+        cache.release(pinned);
+        pool.shutdown();
+    }
+
+    private static String id(int i) {
+        return String.format("A%03d", i);
+    }
+}
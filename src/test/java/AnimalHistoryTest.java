@@ -0,0 +1,75 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnimalHistoryTest {
+    private static final LocalDate DAY = LocalDate.of(2026, 4, 1);
+
+    @TempDir
+    File directory;
+
+    @Test
+    void keepsExactWeightsAndLongNotesAcrossReopening() throws IOException {
+        char[] longNote = new char[100_000];
+        Arrays.fill(longNote, 'h');
+        String note = new String(longNote);
+
+        AnimalHistory history = new AnimalHistory(directory);
+        List<AnimalHistory.Event> events = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            events.add(weight("A" + (i % 5), String.valueOf(400.123456789 + i), DAY.atTime(8, 0, i)));
+        }
+        events.add(new AnimalHistory.Event(AnimalHistory.EventType.FEEDING, "A1", note, DAY.atTime(9, 0)));
+        history.append(events);
+        history.close(); // Writes the day's index
+        assertTrue(new File(directory, DAY + ".idx").exists());
+
+        history = new AnimalHistory(directory);
+        history.append(Collections.singletonList(weight("A1", "499.5", DAY.atTime(10, 0)))); // After the index
+        List<AnimalHistory.Event> a1 = history.eventsFor("A1", null, DAY, DAY);
+        assertEquals(12, a1.size());
+        assertEquals(401.123456789, a1.get(0).weight());
+        assertEquals(note, a1.get(10).value);
+        assertEquals(499.5, a1.get(11).weight());
+        for (int i = 1; i < a1.size(); i++) assertFalse(a1.get(i).time.isBefore(a1.get(i - 1).time), "oldest first");
+        assertEquals(10, history.eventsFor("A2", AnimalHistory.EventType.WEIGHT, DAY, DAY).size());
+        assertEquals(new TreeSet<>(Collections.singleton("A1")),
+                history.animalsWith(AnimalHistory.EventType.FEEDING, note, DAY, DAY));
+        history.close();
+    }
+
+    @Test
+    void recordTornByACrashIsIgnoredAndWrittenOver() throws IOException {
+        AnimalHistory history = new AnimalHistory(directory);
+        history.append(Arrays.asList(
+                new AnimalHistory.Event(AnimalHistory.EventType.HEALTH, "A1", "Sick", DAY.atTime(1, 0)),
+                weight("A1", "410.5", DAY.atTime(2, 0))));
+        history.close();
+        try (FileOutputStream out = new FileOutputStream(new File(directory, DAY + ".events"), true)) {
+            out.write(new byte[]{0, 0, 0, 40, 0, 2, 0}); // The start of a record, cut short
+        }
+
+        history = new AnimalHistory(directory);
+        assertEquals(2, history.eventsFor("A1", null, DAY, DAY).size());
+        history.append(Collections.singletonList(weight("A1", "411.25", DAY.atTime(3, 0))));
+        List<AnimalHistory.Event> events = history.eventsFor("A1", null, DAY, DAY);
+        assertEquals(3, events.size());
+        assertEquals("Sick", events.get(0).value);
+        assertEquals(410.5, events.get(1).weight());
+        assertEquals(411.25, events.get(2).weight());
+        assertEquals(Collections.singleton("A1"), history.animalsWith(AnimalHistory.EventType.HEALTH, "sick", DAY, DAY));
+        history.close();
+    }
+
+    private static AnimalHistory.Event weight(String id, String kg, LocalDateTime time) {
+        return new AnimalHistory.Event(AnimalHistory.EventType.WEIGHT, id, kg, time);
+    }
+}
@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A damaged snapshot must fail with an IOException, never an allocation or a runtime exception,
+// so that loading falls back to the previous generation.
+class AnimalSnapshotTest {
+    private static final int COUNT_OFFSET = 8; // After the magic number and version
+
+    @TempDir
+    File directory;
+
+    @Test
+    void roundTripsTheHerd() throws IOException {
+        File file = new File(directory, "herd.fsnap");
+        AnimalSnapshot.write(herd(3), file);
+        Map<String, Animal> animals = new TreeMap<>();
+        AnimalSnapshot.read(file, animals);
+        assertEquals(3, animals.size());
+        assertEquals(herd(3).get(1).toRecord(), animals.get("A1").toRecord());
+    }
+
+    @Test
+    void corruptCountsAndBytesAreIOExceptions() throws IOException {
+        File file = new File(directory, "herd.fsnap");
+        for (int count : new int[]{-1, Integer.MAX_VALUE, 1 << 20}) {
+            AnimalSnapshot.write(herd(3), file);
+            putInt(file, COUNT_OFFSET, count);
+            reseal(file); // So the count checks, not the checksum, have to catch it
+            IOException error = assertThrows(IOException.class, () -> AnimalSnapshot.read(file, new HashMap<>()));
+            assertTrue(error.getMessage().contains("doesn't fit"), error.getMessage());
+        }
+
+        AnimalSnapshot.write(herd(3), file);
+        putInt(file, file.length() - 20, 0x7fff1234); // Inside the last column
+        IOException error = assertThrows(IOException.class, () -> AnimalSnapshot.read(file, new HashMap<>()));
+        assertTrue(error.getMessage().contains("checksum"), error.getMessage());
+    }
+
+    @Test
+    void corruptSnapshotFallsBackToThePreviousGeneration() throws IOException {
+        File file = new File(directory, "herd.fsnap");
+        AnimalSnapshot.write(herd(2), file);
+        AnimalSnapshot.write(herd(3), file); // The two-animal one is now generation 1
+        putInt(file, COUNT_OFFSET + 4, -5); // The breed dictionary's size
+        reseal(file);
+
+        Map<String, Animal> animals = new HashMap<>();
+        List<String> problems = new ArrayList<>();
+        assertEquals(AnimalSnapshot.generation(file, 1), AnimalSnapshot.readNewest(file, animals, problems));
+        assertEquals(2, animals.size());
+        assertEquals(1, problems.size());
+    }
+
+    private static List<Animal> herd(int size) {
+        List<Animal> herd = new ArrayList<>();
+        for (int i = 0; i < size; i++) herd.add(new Animal("A" + i, "Angus", 2 + i, 400 + i, "R" + i));
+        return herd;
+    }
+
+    // Rewrites the trailing checksum to match the body
+    private static void reseal(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        CRC32 crc = new CRC32();
+        crc.update(bytes, COUNT_OFFSET, bytes.length - 4 - COUNT_OFFSET);
+        putInt(file, bytes.length - 4, (int) crc.getValue());
+    }
+
+    private static void putInt(File file, long offset, int value) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(offset);
+            out.writeInt(value);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Splits must leave both halves within a page whatever the mix of key and value sizes, and what
+// was committed must read back the same after reopening.
+class BTreeStoreTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void largeEntryInTheMiddleOfAFullLeafSplitsIntoPages() throws IOException {
+        // A leaf of small entries, then a 500-byte key with a 1 KB value at each point in it; where
+        // the entries before it come to just under half the page, splitting by bytes from the
+        // left would put it in a left half over a page
+        for (int at = 100; at < 200; at += 3) {
+            File file = new File(directory, "store" + at + ".fdb");
+            Map<String, byte[]> expected = new TreeMap<>();
+            try (BTreeStore store = new BTreeStore(file)) {
+                for (int i = 0; i < 210; i++) {
+                    put(store, expected, String.format("k%04d", i), bytes(8, i));
+                }
+                put(store, expected, String.format("k%04d", at) + repeat('m', 495), bytes(1024, at));
+                store.commit();
+                put(store, expected, String.format("k%04d", at) + "n", bytes(16, at)); // Later commits still work
+                store.commit();
+            }
+            assertStored(file, expected);
+        }
+    }
+
+    @Test
+    void mixedKeyAndValueSizesRoundTrip() throws IOException {
+        File file = new File(directory, "store.fdb");
+        Map<String, byte[]> expected = new TreeMap<>();
+        Random random = new Random(42);
+        try (BTreeStore store = new BTreeStore(file)) {
+            for (int i = 0; i < 5000; i++) {
+                String key = "k" + random.nextInt(2000) + repeat('x', random.nextInt(500));
+                int[] sizes = {0, 10, 300, 1024, 1025, 6000};
+                put(store, expected, key, bytes(sizes[random.nextInt(sizes.length)], i));
+                if (i % 250 == 0) store.commit();
+            }
+        }
+        assertStored(file, expected);
+    }
+
+    private static void put(BTreeStore store, Map<String, byte[]> expected, String key, byte[] value) throws IOException {
+        store.put(key, value);
+        expected.put(key, value);
+    }
+
+    private static void assertStored(File file, Map<String, byte[]> expected) throws IOException {
+        try (BTreeStore store = new BTreeStore(file)) {
+            assertEquals(expected.size(), store.getEntryCount());
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                assertArrayEquals(entry.getValue(), store.get(entry.getKey()), entry.getKey());
+            }
+            List<String> scanned = new ArrayList<>();
+            store.scan("", (key, value) -> scanned.add(key));
+            assertEquals(new ArrayList<>(expected.keySet()), scanned);
+        }
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,31 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// The process-wide registry must follow the open herd and let go of closed ones.
+class FarmMetricsTest {
+    @TempDir
+    File dataDirectory;
+
+    @Test
+    void gaugesFollowTheOpenInstanceAndGoAwayWhenItCloses() {
+        assumeTrue(FarmMetrics.ENABLED);
+        FarmMetrics metrics = FarmMetrics.getDefault();
+        LivestockManagement first = new LivestockManagement(new File(dataDirectory, "first"));
+        first.registerAnimal("A1", "Angus", 2, 400, "R1");
+        LivestockManagement second = new LivestockManagement(new File(dataDirectory, "second"));
+        assertEquals(0, metrics.readGauge("herd.size"), "the latest instance owns the gauges");
+
+        first.close(); // Not the owner any more, so it leaves the gauges alone
+        assertEquals(0, metrics.readGauge("herd.size"));
+        assertNotNull(metrics.findTimer("herd.save"));
+
+        second.close();
+        assertTrue(Double.isNaN(metrics.readGauge("herd.size")));
+        assertNull(metrics.findTimer("herd.save"));
+    }
+}
@@ -0,0 +1,39 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HerdColumnsTest {
+    @Test
+    void ageDistributionCountsOutlandishAgesWithoutSizingAnArrayByThem() {
+        HerdColumns columns = new HerdColumns();
+        columns.add(new Animal("A1", "Angus", 3, 400, "R1"));
+        columns.add(new Animal("A2", "Angus", 3, 400, "R2"));
+        columns.add(new Animal("A3", "Angus", Integer.MAX_VALUE, 400, "R3"));
+        columns.add(new Animal("A4", "Angus", -4, 400, "R4"));
+
+        Map<Integer, Long> expected = new TreeMap<>();
+        expected.put(0, 1L);
+        expected.put(3, 2L);
+        expected.put(Integer.MAX_VALUE, 1L);
+        assertEquals(expected, columns.ageDistribution());
+    }
+
+    @Test
+    void statisticsScanACopyThatLaterChangesDoNotTouch() {
+        HerdColumns columns = new HerdColumns();
+        for (int i = 0; i < 1000; i++) columns.add(new Animal("A" + i, i % 2 == 0 ? "Angus" : "Jersey", 2, 400 + i, "R" + i));
+        HerdStatistics statistics = columns.statistics(LocalDate.now(), new ForkJoinPool(2));
+        columns.add(new Animal("B1", "Angus", 2, 5000, "S1"));
+
+        assertEquals(1000, statistics.getCount());
+        assertEquals(400, statistics.getMinWeight());
+        assertEquals(1399, statistics.getMaxWeight());
+        assertEquals(500, statistics.getByBreed().get("Angus").count);
+        assertEquals(1000, statistics.getUpdatedSinceCount());
+    }
+}
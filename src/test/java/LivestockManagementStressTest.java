@@ -0,0 +1,140 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Hammers one LivestockManagement from many threads with registrations that race for the same IDs
+// and RFID tags, health and feeding changes, scans and searches, then checks that the herd, its
+// counters, the search index and the reloaded store all tell the same story. Runs over the
+// configured storage, so -Dfarm.storage=btree -Dfarm.cache.maxBytes=20000 repeats it over a
+// cache far smaller than the herd.
+class LivestockManagementStressTest {
+    private static final int THREADS = 8;
+    private static final int IDS = 400; // Contended IDs, and separately contended RFID tags
+    private static final int OPERATIONS = 4000; // Changes and reads per thread
+    private static final String[] STATUSES = {"Healthy", "Sick", "Injured", "Quarantine"};
+
+    @TempDir
+    File dataDirectory;
+
+    @Test
+    void concurrentChangesKeepHerdIndexesAndStoreInAgreement() throws Exception {
+        LivestockManagement system = new LivestockManagement(dataDirectory);
+        Map<String, LongAdder> changesById = new ConcurrentHashMap<>();
+        LongAdder tornReads = new LongAdder();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            workers.add(pool.submit(() -> {
+                start.await();
+                Random random = new Random(thread);
+                for (int i = 0; i < IDS; i++) {
+                    // Every thread claims the same IDs (with its own tags) and the same tags (with
+                    // its own IDs); exactly one claim of each may win
+                    system.registerAnimal("A" + i, "Angus", 2, 400, "R" + i + "-" + thread);
+                    system.registerAnimal("B" + thread + "-" + i, "Jersey", 3, 450, "T" + i);
+                }
+                for (int op = 0; op < OPERATIONS; op++) {
+                    String id = "A" + random.nextInt(IDS);
+                    switch (random.nextInt(5)) {
+                        case 0:
+                            if (system.updateHealthStatus(id, STATUSES[random.nextInt(STATUSES.length)]).isSuccess()) {
+                                changesById.computeIfAbsent(id, key -> new LongAdder()).increment();
+                            }
+                            break;
+                        case 1:
+                            if (system.logFeedingData(id, "Hay " + thread + "-" + op).isSuccess()) {
+                                changesById.computeIfAbsent(id, key -> new LongAdder()).increment();
+                            }
+                            break;
+                        case 2: {
+                            String tag = "T" + random.nextInt(IDS);
+                            Animal animal = system.getAnimalByRFIDTag(tag);
+                            if (animal != null && !animal.getRFIDTag().equals(tag)) tornReads.increment();
+                            system.scanRFIDTag(tag);
+                            break;
+                        }
+                        case 3: {
+                            Animal animal = system.getAnimalById(id);
+                            if (animal != null && !animal.getId().equals(id)) tornReads.increment();
+                            break;
+                        }
+                        default:
+                            system.searchAnimalIds("health:" + STATUSES[random.nextInt(STATUSES.length)].toLowerCase());
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) worker.get(2, TimeUnit.MINUTES);
+        pool.shutdown();
+        system.flushChanges();
+
+        assertEquals(0, tornReads.sum(), "lookups returned the wrong animal");
+
+        // One winner per contended ID and per contended tag
+        List<String> ids = system.getSortedAnimalIds();
+        assertEquals(2 * IDS, ids.size());
+        assertEquals(new TreeSet<>(ids).size(), ids.size(), "duplicate IDs");
+        assertEquals(new ArrayList<>(new TreeSet<>(ids)), ids, "ID list out of order");
+        List<Animal> herd = system.getAllAnimals();
+        assertEquals(2 * IDS, herd.size());
+        Set<String> tags = new HashSet<>();
+        for (Animal animal : herd) {
+            assertTrue(tags.add(animal.getRFIDTag()), "tag assigned twice: " + animal.getRFIDTag());
+            assertEquals(animal.getId(), system.getAnimalByRFIDTag(animal.getRFIDTag()).getId());
+        }
+
+        // Every successful change applied exactly once; versions count from when an animal was
+        // last read from the store, so this needs the whole herd in memory
+        for (Animal animal : system.getAnimalCache().isBounded() ? Collections.<Animal>emptyList() : herd) {
+            LongAdder changes = changesById.get(animal.getId());
+            assertEquals(changes == null ? 0 : changes.sum(), animal.getVersion(), "lost update on " + animal.getId());
+        }
+
+        // Counters and search index agree with the animals
+        Map<String, Long> healthCounts = countHealth(herd);
+        assertEquals(healthCounts, system.getHerdSummary().getHealthCounts());
+        assertEquals(herd.size(), system.getHerdSummary().getTotal());
+        assertEquals(herd.size(), system.getHerdColumns().size());
+        for (String status : STATUSES) {
+            Set<String> expected = new TreeSet<>();
+            for (Animal animal : herd) {
+                if (animal.getHealthStatus().equals(status)) expected.add(animal.getId());
+            }
+            assertEquals(expected, new TreeSet<>(system.searchAnimalIds("health:" + status.toLowerCase())), status);
+        }
+
+        // The store holds exactly what was in memory
+        Map<String, String> records = new TreeMap<>();
+        for (Animal animal : herd) records.put(animal.getId(), animal.toRecord());
+        system.close();
+
+        LivestockManagement reloaded = new LivestockManagement(dataDirectory);
+        try {
+            assertEquals(Collections.emptyList(), reloaded.getLoadErrors());
+            assertEquals(ids, reloaded.getSortedAnimalIds());
+            Map<String, String> reloadedRecords = new TreeMap<>();
+            for (Animal animal : reloaded.getAllAnimals()) reloadedRecords.put(animal.getId(), animal.toRecord());
+            assertEquals(records, reloadedRecords);
+            assertEquals(healthCounts, reloaded.getHerdSummary().getHealthCounts());
+        } finally {
+            reloaded.close();
+        }
+    }
+
+    private static Map<String, Long> countHealth(List<Animal> herd) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Animal animal : herd) counts.merge(animal.getHealthStatus(), 1L, Long::sum);
+        return counts;
+    }
+}
@@ -0,0 +1,36 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A sink that throws must not end the writer: the batch goes to the failure handler and later
+// changes are still written.
+class PersistenceWriterTest {
+    @Test
+    void runtimeExceptionFromTheSinkIsReportedAndTheWriterKeepsGoing() throws Exception {
+        List<String> written = new CopyOnWriteArrayList<>();
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        PersistenceWriter writer = new PersistenceWriter(records -> {
+            for (String[] record : records) {
+                if (record[0].equals("bad")) throw new IllegalStateException("store is closed");
+                written.add(record[0]);
+            }
+        }, (records, error) -> failures.add(error));
+        try {
+            writer.submit("bad");
+            writer.flush();
+            assertEquals(1, writer.getFailedBatchCount());
+            assertEquals(1, failures.size());
+            assertTrue(failures.get(0) instanceof IllegalStateException);
+
+            writer.submit("good");
+            writer.flush();
+            assertEquals(Collections.singletonList("good"), written);
+            assertEquals(0, writer.pendingCount());
+        } finally {
+            writer.close();
+        }
+    }
+}
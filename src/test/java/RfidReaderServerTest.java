@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Connections are capped, and closing with a reader blocked on a full queue neither hangs nor
+// loses frames without counting them.
+class RfidReaderServerTest {
+    @TempDir
+    File dataDirectory;
+
+    @Test
+    void capsConnectionsAndAccountsForEveryFrameOnClose() throws Exception {
+        LivestockManagement system = new LivestockManagement(dataDirectory);
+        CountDownLatch release = new CountDownLatch(1);
+        RfidReaderServer server = new RfidReaderServer(system, 0, 1, 0, 1, 2, (reader, result) -> {
+            try {
+                release.await(); // Holds the only scanner so the one-frame queue fills
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (Socket busy = new Socket(loopback, server.getPort());
+             Socket idle = new Socket(loopback, server.getPort());
+             Socket refused = new Socket(loopback, server.getPort())) {
+            OutputStream out = busy.getOutputStream();
+            for (int i = 0; i < 10; i++) out.write(("T" + i + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while ((server.getRefusedConnectionCount() < 1 || server.getReceivedCount() < 3)
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, server.getRefusedConnectionCount());
+            assertEquals(2, server.getConnectionCount());
+
+            ExecutorService closer = Executors.newSingleThreadExecutor();
+            Future<?> closing = closer.submit(server::close);
+            Thread.sleep(100);
+            release.countDown();
+            closing.get(10, TimeUnit.SECONDS);
+            closer.shutdown();
+        } finally {
+            release.countDown();
+            server.close();
+            system.close();
+        }
+
+        assertEquals(0, server.getQueueDepth());
+        assertTrue(server.getDroppedCount() >= 1, server.getStats());
+        assertEquals(server.getReceivedCount(), server.getScannedCount() + server.getDroppedCount()
+                + server.getDuplicateCount() + server.getMalformedCount(), server.getStats());
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Scale readings through the ingestor: late readings must not replace a newer weight, here or
+// after a reload, and impossible weights never get in.
+class ScaleFeedIngestorTest {
+    private static final LocalDateTime MORNING = LocalDateTime.of(2026, 3, 1, 8, 0);
+
+    @TempDir
+    File dataDirectory;
+
+    @Test
+    void lateReadingDoesNotReplaceNewerWeight() throws Exception {
+        LivestockManagement system = new LivestockManagement(dataDirectory);
+        system.registerAnimal("A1", "Angus", 2, 400, "R1");
+
+        List<MutationResult> rejected = system.recordWeights(Arrays.asList(
+                new WeightReading("R1", 420, MORNING.plusHours(2))));
+        assertEquals(0, rejected.size());
+        rejected = system.recordWeights(Arrays.asList(new WeightReading("R1", 410, MORNING)));
+        assertEquals(1, rejected.size());
+        assertEquals(MutationResult.Status.STALE, rejected.get(0).getStatus());
+        assertEquals(420, system.getAnimalById("A1").getWeight());
+        system.close();
+
+        LivestockManagement reloaded = new LivestockManagement(dataDirectory);
+        try {
+            assertEquals(420, reloaded.getAnimalById("A1").getWeight());
+            assertEquals(MORNING.plusHours(2), reloaded.getAnimalById("A1").getState().weighed());
+            rejected = reloaded.recordWeights(Arrays.asList(new WeightReading("R1", 405, MORNING.plusHours(1))));
+            assertEquals(MutationResult.Status.STALE, rejected.get(0).getStatus());
+            assertEquals(420, reloaded.getAnimalById("A1").getWeight());
+        } finally {
+            reloaded.close();
+        }
+    }
+
+    @Test
+    void ingestorCountsStaleReadingsAndRefusesImpossibleWeights() throws Exception {
+        LivestockManagement system = new LivestockManagement(dataDirectory);
+        system.registerAnimal("A1", "Angus", 2, 400, "R1");
+        ScaleFeedIngestor ingestor = new ScaleFeedIngestor(system, 100, 10, 10);
+        try {
+            assertThrows(IllegalArgumentException.class, () -> ingestor.submit(new WeightReading("R1", Double.NaN, MORNING)));
+            assertThrows(IllegalArgumentException.class, () -> ingestor.submit(new WeightReading("R1", -1, MORNING)));
+            assertThrows(IllegalArgumentException.class,
+                    () -> ingestor.submit(new WeightReading("R1", Double.POSITIVE_INFINITY, MORNING)));
+
+            ingestor.ingest(new BufferedReader(new StringReader(
+                    "R1,430," + MORNING.plusHours(3) + "\n"
+                            + "R1,Infinity," + MORNING.plusHours(4) + "\n"
+                            + "R1,-5," + MORNING.plusHours(4) + "\n")));
+            ingestor.close();
+            ScaleFeedIngestor late = new ScaleFeedIngestor(system, 100, 10, 10);
+            late.submit(new WeightReading("R1", 415, MORNING));
+            late.close();
+
+            assertEquals(2, ingestor.getMalformedCount());
+            assertEquals(1, ingestor.getAppliedCount());
+            assertEquals(1, late.getStaleCount());
+            assertEquals(0, late.getAppliedCount());
+            assertEquals(430, system.getAnimalById("A1").getWeight());
+            assertThrows(IllegalStateException.class, () -> late.submit(new WeightReading("R1", 400, MORNING)));
+        } finally {
+            ingestor.close();
+            system.close();
+        }
+    }
+}
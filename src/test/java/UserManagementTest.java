@@ -0,0 +1,28 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Hashing is slow on purpose, so everything that hashes must be possible off the caller's thread.
+class UserManagementTest {
+    @TempDir
+    File dataDirectory;
+
+    @Test
+    void firstStartCreatesTheAdminInTheBackgroundAndLoginWaitsForIt() throws Exception {
+        UserManagement users = new UserManagement(dataDirectory);
+        try {
+            assertTrue(users.authenticateAsync("admin", "admin").get(1, TimeUnit.MINUTES));
+            assertTrue(users.addUserAsync("ann", "secret", UserRole.MANAGER).get(1, TimeUnit.MINUTES));
+            assertFalse(users.addUserAsync("ann", "other", UserRole.MANAGER).get(1, TimeUnit.MINUTES));
+            assertTrue(users.changePasswordAsync("ann", "", "changed").get(1, TimeUnit.MINUTES));
+            assertNotNull(users.login("ann", "changed"));
+            assertNull(users.login("ann", "secret"));
+        } finally {
+            users.close();
+        }
+    }
+}